@@ -17,22 +17,30 @@
 package com.google.cloud.spring.autoconfigure.dlp;
 
 import java.io.IOException;
-import java.util.concurrent.Executors;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
 
 import com.google.api.gax.core.CredentialsProvider;
-import com.google.api.gax.core.FixedExecutorProvider;
+import com.google.api.gax.core.InstantiatingExecutorProvider;
 import com.google.cloud.dlp.v2.DlpServiceClient;
 import com.google.cloud.dlp.v2.DlpServiceSettings;
 import com.google.cloud.spring.core.DefaultCredentialsProvider;
 import com.google.cloud.spring.core.UserAgentHeaderProvider;
+import com.google.cloud.spring.dlp.CloudDLPBatchingDispatcher;
+import com.google.cloud.spring.dlp.CloudDLPLocationRouter;
 import com.google.cloud.spring.dlp.CloudDLPTemplate;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.autoconfigure.health.ConditionalOnEnabledHealthIndicator;
+import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.util.StringUtils;
 
 /**
  * Provides Spring Beans for using Cloud DLP API.
@@ -47,17 +55,29 @@ import org.springframework.context.annotation.Configuration;
 public class CloudDLPAutoConfiguration {
 	private final CloudDLPProperties cloudDLPProperties;
 
-	private final CredentialsProvider credentialsProvider;
+	private final ObjectProvider<CredentialsProvider> globalCredentialsProvider;
 
-	public CloudDLPAutoConfiguration(CloudDLPProperties properties, CredentialsProvider credentialsProvider)
-			throws IOException {
+	private CredentialsProvider credentialsProvider;
+
+	public CloudDLPAutoConfiguration(CloudDLPProperties properties,
+			ObjectProvider<CredentialsProvider> credentialsProvider) {
 		this.cloudDLPProperties = properties;
+		this.globalCredentialsProvider = credentialsProvider;
+	}
 
-		if (properties.getCredentials().hasKey()) {
-			this.credentialsProvider = new DefaultCredentialsProvider(properties);
-		} else {
-			this.credentialsProvider = credentialsProvider;
+	/**
+	 * Resolve the credentials on first use rather than at construction, so that a
+	 * lazily created client also defers reading the key file.
+	 */
+	private synchronized CredentialsProvider credentialsProvider() throws IOException {
+		if (this.credentialsProvider == null) {
+			if (this.cloudDLPProperties.getCredentials().hasKey()) {
+				this.credentialsProvider = new DefaultCredentialsProvider(this.cloudDLPProperties);
+			} else {
+				this.credentialsProvider = this.globalCredentialsProvider.getObject();
+			}
 		}
+		return this.credentialsProvider;
 	}
 
 	/**
@@ -72,33 +92,166 @@ public class CloudDLPAutoConfiguration {
 	 * Most of the Google Cloud API clients are thread-safe heavy objects. I.e.,
 	 * it's better to produce a singleton and re-using the client object for
 	 * multiple requests.
+	 * <p>
+	 * The client is a lazy bean: it is created when first requested, which with
+	 * {@code spring.cloud.gcp.dlp.startup=lazy} or {@code prewarm} is the first
+	 * template call or the pre-warming run rather than context startup.
 	 * 
 	 * @return a Cloud DLP API client
 	 * @throws IOException if an exception occurs creating the DlpServiceClient
 	 */
 	@Bean
+	@Lazy
 	@ConditionalOnMissingBean
 	public DlpServiceClient dlpServiceClient() throws IOException {
-		DlpServiceSettings clientSettings = DlpServiceSettings.newBuilder()
-				.setCredentialsProvider(this.credentialsProvider)
-				.setHeaderProvider(new UserAgentHeaderProvider(CloudDLPAutoConfiguration.class))
-				.setBackgroundExecutorProvider(FixedExecutorProvider
-						.create(Executors.newScheduledThreadPool(this.cloudDLPProperties.getExecutorThreadsCount())))
-				.build();
+		return createClient(null);
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnProperty("spring.cloud.gcp.dlp.batching.enabled")
+	public CloudDLPBatchingDispatcher cloudDLPBatchingDispatcher() {
+		final CloudDLPProperties.Batching batching = cloudDLPProperties.getBatching();
+		return new CloudDLPBatchingDispatcher(batching.getMaxItems(), batching.getMaxBytes().toBytes(),
+				batching.getMaxLinger());
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	public CloudDLPTemplate cloudDLPTemplate(final ObjectProvider<DlpServiceClient> dlpClient,
+			final ObjectProvider<CloudDLPBatchingDispatcher> batchingDispatcher) {
+		if (cloudDLPProperties.getStartup() == CloudDLPProperties.Startup.EAGER) {
+			return createTemplate(cloudDLPProperties.getLocation(), dlpClient.getObject(),
+					batchingDispatcher.getIfAvailable());
+		}
+		return configureTemplate(new CloudDLPTemplate(cloudDLPProperties.getProjectIdProvider(),
+				cloudDLPProperties.getLocation(), () -> dlpClient.getObject()), batchingDispatcher.getIfAvailable());
+	}
 
-		return DlpServiceClient.create(clientSettings);
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnProperty(value = "spring.cloud.gcp.dlp.startup", havingValue = "prewarm")
+	public CloudDLPPrewarmer cloudDLPPrewarmer(final CloudDLPTemplate cloudDLPTemplate) {
+		return new CloudDLPPrewarmer(cloudDLPTemplate, () -> credentialsProvider().getCredentials(),
+				cloudDLPProperties.getPrewarmInspections());
 	}
 
+	/**
+	 * Configure a {@link CloudDLPLocationRouter} holding a template and a client
+	 * per location listed under {@code spring.cloud.gcp.dlp.routing.locations}.
+	 * As for the main template, the clients are only created up front with
+	 * {@code spring.cloud.gcp.dlp.startup=eager}, otherwise on the first call
+	 * routed to their location. The clients are closed with the router.
+	 *
+	 * @return the location router
+	 */
 	@Bean
 	@ConditionalOnMissingBean
-	public CloudDLPTemplate cloudDLPTemplate(final DlpServiceClient dlpClient) {
-		final CloudDLPTemplate template = new CloudDLPTemplate(cloudDLPProperties.getProjectIdProvider(),
-				cloudDLPProperties.getLocation(), dlpClient);
+	@ConditionalOnProperty("spring.cloud.gcp.dlp.routing.enabled")
+	public CloudDLPLocationRouter cloudDLPLocationRouter(
+			final ObjectProvider<CloudDLPBatchingDispatcher> batchingDispatcher) {
+		final CloudDLPProperties.Routing routing = cloudDLPProperties.getRouting();
+		final CloudDLPLocationRouter router = new CloudDLPLocationRouter();
+		router.setSmoothing(routing.getSmoothing());
+		router.setMaxErrorRate(routing.getMaxErrorRate());
+		router.setRecoveryInterval(routing.getRecoveryInterval());
+
+		for (final CloudDLPProperties.Route route : routing.getLocations()) {
+			final RouteClient client = new RouteClient(route.getEndpoint());
+			if (cloudDLPProperties.getStartup() == CloudDLPProperties.Startup.EAGER) {
+				client.get();
+			}
+			router.addRoute(configureTemplate(new CloudDLPTemplate(cloudDLPProperties.getProjectIdProvider(),
+					route.getLocation(), client), batchingDispatcher.getIfAvailable()), route.getQuotaPerMinute(),
+					client);
+		}
+		routing.getResidency().forEach(
+				(residency, patterns) -> router.addResidencyRule(residency, patterns.toArray(new String[0])));
+		return router;
+	}
+
+	private DlpServiceClient createClient(final String endpoint) throws IOException {
+		final DlpServiceSettings.Builder clientSettings = DlpServiceSettings.newBuilder()
+				.setCredentialsProvider(credentialsProvider())
+				.setHeaderProvider(new UserAgentHeaderProvider(CloudDLPAutoConfiguration.class))
+				// The client owns executors of an instantiating provider and shuts them down when closed.
+				.setBackgroundExecutorProvider(InstantiatingExecutorProvider.newBuilder()
+						.setExecutorThreadCount(this.cloudDLPProperties.getExecutorThreadsCount()).build());
+		if (StringUtils.hasText(endpoint)) {
+			clientSettings.setEndpoint(endpoint);
+		}
+
+		return DlpServiceClient.create(clientSettings.build());
+	}
+
+	private CloudDLPTemplate createTemplate(final String location, final DlpServiceClient dlpClient,
+			final CloudDLPBatchingDispatcher batchingDispatcher) {
+		return configureTemplate(new CloudDLPTemplate(cloudDLPProperties.getProjectIdProvider(), location, dlpClient),
+				batchingDispatcher);
+	}
+
+	private CloudDLPTemplate configureTemplate(final CloudDLPTemplate template,
+			final CloudDLPBatchingDispatcher batchingDispatcher) {
 		template.setMaxfindings(cloudDLPProperties.getMaxFindings());
 		template.setIncludeFindings(cloudDLPProperties.isIncludeFindings());
 		template.setIncludeQuote(cloudDLPProperties.isIncludeQuote());
 		template.setMinLikelihood(cloudDLPProperties.getMinLikelihood());
 		template.setInspectionTemplate(cloudDLPProperties.getInspectionTemplate());
+		template.setInlineContentLimit(cloudDLPProperties.getInlineContentLimit().toBytes());
+		template.setJobPollInitialDelay(cloudDLPProperties.getJobPollInitialDelay());
+		template.setJobPollMaxDelay(cloudDLPProperties.getJobPollMaxDelay());
+		template.setBatchingDispatcher(batchingDispatcher);
 		return template;
 	}
+
+	/**
+	 * Creates the client of a route on first use, and closes it with the router
+	 * if it was created.
+	 */
+	private final class RouteClient implements Supplier<DlpServiceClient>, AutoCloseable {
+		private final String endpoint;
+
+		private DlpServiceClient client;
+
+		private RouteClient(final String endpoint) {
+			this.endpoint = endpoint;
+		}
+
+		@Override
+		public synchronized DlpServiceClient get() {
+			if (this.client == null) {
+				try {
+					this.client = createClient(this.endpoint);
+				} catch (final IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}
+			return this.client;
+		}
+
+		@Override
+		public synchronized void close() {
+			if (this.client != null) {
+				this.client.close();
+			}
+		}
+	}
+
+	/**
+	 * Exposes client readiness, including pre-warming progress, when Spring Boot
+	 * Actuator is on the classpath and {@code management.health.dlp.enabled} is
+	 * not turned off.
+	 */
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass({ HealthIndicator.class, ConditionalOnEnabledHealthIndicator.class })
+	@ConditionalOnEnabledHealthIndicator("dlp")
+	static class CloudDLPHealthConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean(name = "dlpHealthIndicator")
+		public CloudDLPHealthIndicator dlpHealthIndicator(final CloudDLPProperties properties,
+				final CloudDLPTemplate cloudDLPTemplate, final ObjectProvider<CloudDLPPrewarmer> prewarmer) {
+			return new CloudDLPHealthIndicator(properties.getStartup(), cloudDLPTemplate, prewarmer.getIfAvailable());
+		}
+	}
 }
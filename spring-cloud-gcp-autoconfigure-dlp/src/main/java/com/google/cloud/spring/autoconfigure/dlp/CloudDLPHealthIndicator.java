@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.autoconfigure.dlp;
+
+import com.google.cloud.spring.dlp.CloudDLPTemplate;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+
+/**
+ * Reports whether the Cloud DLP client is ready to serve requests. With
+ * pre-warming enabled the indicator is out of service until the pre-warming run
+ * completes, and down while its last attempt failed and the next one is pending;
+ * otherwise it is up and reports whether the client has been created yet.
+ *
+ * @author Vinesh
+ * @since 2.0.7
+ */
+public class CloudDLPHealthIndicator extends AbstractHealthIndicator {
+	private final CloudDLPProperties.Startup startup;
+
+	private final CloudDLPTemplate template;
+
+	private final CloudDLPPrewarmer prewarmer;
+
+	public CloudDLPHealthIndicator(final CloudDLPProperties.Startup startup, final CloudDLPTemplate template,
+			final CloudDLPPrewarmer prewarmer) {
+		super("Cloud DLP health check failed");
+		this.startup = startup;
+		this.template = template;
+		this.prewarmer = prewarmer;
+	}
+
+	@Override
+	protected void doHealthCheck(final Health.Builder builder) {
+		builder.withDetail("startup", this.startup)
+				.withDetail("clientInitialized", this.template.isClientInitialized());
+
+		if (this.prewarmer == null) {
+			builder.up();
+			return;
+		}
+
+		builder.withDetail("prewarm", this.prewarmer.getState());
+		switch (this.prewarmer.getState()) {
+		case READY:
+			builder.up().withDetail("infoTypes", this.prewarmer.getInfoTypeCount());
+			break;
+		case FAILED:
+			builder.down(this.prewarmer.getFailure());
+			break;
+		default:
+			builder.outOfService();
+		}
+	}
+}
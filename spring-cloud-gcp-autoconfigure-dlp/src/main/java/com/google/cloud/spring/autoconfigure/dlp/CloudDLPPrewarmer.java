@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.autoconfigure.dlp;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+import com.google.auth.Credentials;
+import com.google.cloud.spring.dlp.CloudDLPTemplate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * Warms up the Cloud DLP client in the background once the application is
+ * ready: creates the client and opens its channel, refreshes the credentials,
+ * loads the info type catalog and runs a few synthetic inspections so the
+ * template's code paths are compiled before the first real request. A failed
+ * run, e.g. on a transient network error at boot, is retried with exponential
+ * backoff until one succeeds.
+ *
+ * @author Vinesh
+ * @since 2.0.7
+ */
+public class CloudDLPPrewarmer implements ApplicationListener<ApplicationReadyEvent> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CloudDLPPrewarmer.class);
+
+	private static final String SYNTHETIC_TEXT = "Pre-warming request, contact test@example.com";
+
+	private static final Duration INITIAL_RETRY_DELAY = Duration.ofSeconds(1);
+
+	private static final Duration MAX_RETRY_DELAY = Duration.ofMinutes(1);
+
+	/**
+	 * Progress of the pre-warming run.
+	 */
+	public enum State {
+		PENDING, WARMING, READY, FAILED
+	}
+
+	private final CloudDLPTemplate template;
+
+	private final Callable<Credentials> credentials;
+
+	private final int inspections;
+
+	private volatile State state = State.PENDING;
+
+	private volatile Exception failure;
+
+	private volatile int infoTypeCount;
+
+	public CloudDLPPrewarmer(final CloudDLPTemplate template, final Callable<Credentials> credentials,
+			final int inspections) {
+		this.template = template;
+		this.credentials = credentials;
+		this.inspections = inspections;
+	}
+
+	@Override
+	public void onApplicationEvent(final ApplicationReadyEvent event) {
+		if (this.state != State.PENDING) {
+			return;
+		}
+		this.state = State.WARMING;
+
+		final Thread worker = new Thread(this::prewarmUntilReady, "dlp-prewarm");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	private void prewarmUntilReady() {
+		long delayMillis = INITIAL_RETRY_DELAY.toMillis();
+		while (!prewarm()) {
+			LOGGER.info("Retrying Cloud DLP client pre-warming in {} ms.", delayMillis);
+			try {
+				Thread.sleep(delayMillis);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			delayMillis = Math.min(delayMillis * 2, MAX_RETRY_DELAY.toMillis());
+		}
+	}
+
+	/**
+	 * Run a single pre-warming attempt.
+	 *
+	 * @return whether the attempt succeeded
+	 */
+	boolean prewarm() {
+		try {
+			final long start = System.nanoTime();
+			this.credentials.call().refresh();
+			this.infoTypeCount = this.template.getInspectInfoTypes().size();
+			for (int i = 0; i < this.inspections; i++) {
+				this.template.inspectText(SYNTHETIC_TEXT);
+			}
+			this.failure = null;
+			this.state = State.READY;
+			LOGGER.info("Cloud DLP client pre-warmed in {} ms.", (System.nanoTime() - start) / 1_000_000);
+			return true;
+		} catch (final Exception e) {
+			this.failure = e;
+			this.state = State.FAILED;
+			LOGGER.warn("Failed to pre-warm Cloud DLP client.", e);
+			return false;
+		}
+	}
+
+	public State getState() {
+		return this.state;
+	}
+
+	public Exception getFailure() {
+		return this.failure;
+	}
+
+	public int getInfoTypeCount() {
+		return this.infoTypeCount;
+	}
+}
@@ -16,15 +16,23 @@
 
 package com.google.cloud.spring.autoconfigure.dlp;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import com.google.cloud.spring.core.Credentials;
 import com.google.cloud.spring.core.CredentialsSupplier;
 import com.google.cloud.spring.core.DefaultGcpProjectIdProvider;
 import com.google.cloud.spring.core.GcpProjectIdProvider;
 import com.google.cloud.spring.core.GcpScope;
+import com.google.cloud.spring.dlp.CloudDLPTemplate;
 import com.google.privacy.dlp.v2.Likelihood;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
+import org.springframework.util.unit.DataSize;
 
 /**
  * Additional settings for use with Cloud DLP APIs.
@@ -45,6 +53,15 @@ public class CloudDLPProperties implements CredentialsSupplier {
 	private boolean includeQuote = true;
 	private Likelihood minLikelihood = Likelihood.POSSIBLE;
 	private String inspectionTemplate = null;
+	private DataSize inlineContentLimit = DataSize.ofBytes(CloudDLPTemplate.DEFAULT_INLINE_CONTENT_LIMIT);
+	private Duration jobPollInitialDelay = Duration.ofSeconds(1);
+	private Duration jobPollMaxDelay = Duration.ofSeconds(30);
+	// How the DLP client is initialized: eager, lazy or prewarm.
+	private Startup startup = Startup.EAGER;
+	// Number of synthetic inspections run when pre-warming.
+	private int prewarmInspections = 3;
+	private final Batching batching = new Batching();
+	private final Routing routing = new Routing();
 
 	public Likelihood getMinLikelihood() {
 		return minLikelihood;
@@ -114,4 +131,222 @@ public class CloudDLPProperties implements CredentialsSupplier {
 	public void setInspectionTemplate(final String inspectionTemplate) {
 		this.inspectionTemplate = inspectionTemplate;
 	}
+
+	public DataSize getInlineContentLimit() {
+		return this.inlineContentLimit;
+	}
+
+	public void setInlineContentLimit(final DataSize inlineContentLimit) {
+		this.inlineContentLimit = inlineContentLimit;
+	}
+
+	public Duration getJobPollInitialDelay() {
+		return this.jobPollInitialDelay;
+	}
+
+	public void setJobPollInitialDelay(final Duration jobPollInitialDelay) {
+		this.jobPollInitialDelay = jobPollInitialDelay;
+	}
+
+	public Duration getJobPollMaxDelay() {
+		return this.jobPollMaxDelay;
+	}
+
+	public void setJobPollMaxDelay(final Duration jobPollMaxDelay) {
+		this.jobPollMaxDelay = jobPollMaxDelay;
+	}
+
+	public Startup getStartup() {
+		return this.startup;
+	}
+
+	public void setStartup(final Startup startup) {
+		this.startup = startup;
+	}
+
+	public int getPrewarmInspections() {
+		return this.prewarmInspections;
+	}
+
+	public void setPrewarmInspections(final int prewarmInspections) {
+		if (prewarmInspections < 0) {
+			throw new IllegalArgumentException("prewarmInspections must be positive");
+		}
+		this.prewarmInspections = prewarmInspections;
+	}
+
+	public Batching getBatching() {
+		return this.batching;
+	}
+
+	/**
+	 * Client initialization modes.
+	 */
+	public enum Startup {
+		/**
+		 * Create the client with the application context.
+		 */
+		EAGER,
+		/**
+		 * Create the client on the first template call.
+		 */
+		LAZY,
+		/**
+		 * Create the client in the background once the application is ready, and
+		 * warm up connections, credentials and code paths.
+		 */
+		PREWARM
+	}
+
+	/**
+	 * Settings for transparently batching concurrent single-item text inspections.
+	 */
+	public static class Batching {
+		// Park single-item inspectText calls and send them as table-packed batches.
+		private boolean enabled = false;
+		// Maximum number of texts sent in one request.
+		private int maxItems = 50;
+		// Maximum combined UTF-8 size of the texts sent in one request.
+		private DataSize maxBytes = DataSize.ofKilobytes(400);
+		// Maximum time a call is parked waiting for others to join its batch.
+		private Duration maxLinger = Duration.ofMillis(5);
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(final boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxItems() {
+			return this.maxItems;
+		}
+
+		public void setMaxItems(final int maxItems) {
+			this.maxItems = maxItems;
+		}
+
+		public DataSize getMaxBytes() {
+			return this.maxBytes;
+		}
+
+		public void setMaxBytes(final DataSize maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+
+		public Duration getMaxLinger() {
+			return this.maxLinger;
+		}
+
+		public void setMaxLinger(final Duration maxLinger) {
+			this.maxLinger = maxLinger;
+		}
+	}
+
+	public Routing getRouting() {
+		return this.routing;
+	}
+
+	/**
+	 * Settings for routing calls across several DLP locations.
+	 */
+	public static class Routing {
+		// Create a CloudDLPLocationRouter over the configured locations.
+		private boolean enabled = false;
+		// Locations to route across, each with its own client.
+		private List<Route> locations = new ArrayList<>();
+		// Residency name to allowed location patterns, e.g. eu=europe-*.
+		private Map<String, List<String>> residency = new LinkedHashMap<>();
+		// Weight of the newest sample in the latency and error rate averages.
+		private double smoothing = 0.2;
+		// Error rate above which a location is considered degraded.
+		private double maxErrorRate = 0.5;
+		// Time after the last failure at which a degraded location is tried again.
+		private Duration recoveryInterval = Duration.ofSeconds(30);
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(final boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public List<Route> getLocations() {
+			return this.locations;
+		}
+
+		public void setLocations(final List<Route> locations) {
+			this.locations = locations;
+		}
+
+		public Map<String, List<String>> getResidency() {
+			return this.residency;
+		}
+
+		public void setResidency(final Map<String, List<String>> residency) {
+			this.residency = residency;
+		}
+
+		public double getSmoothing() {
+			return this.smoothing;
+		}
+
+		public void setSmoothing(final double smoothing) {
+			this.smoothing = smoothing;
+		}
+
+		public double getMaxErrorRate() {
+			return this.maxErrorRate;
+		}
+
+		public void setMaxErrorRate(final double maxErrorRate) {
+			this.maxErrorRate = maxErrorRate;
+		}
+
+		public Duration getRecoveryInterval() {
+			return this.recoveryInterval;
+		}
+
+		public void setRecoveryInterval(final Duration recoveryInterval) {
+			this.recoveryInterval = recoveryInterval;
+		}
+	}
+
+	/**
+	 * A single DLP location to route to.
+	 */
+	public static class Route {
+		// DLP location, e.g. europe-west1.
+		private String location;
+		// Client endpoint override, e.g. a regional endpoint; defaults to the global one.
+		private String endpoint;
+		// Requests per minute allowed on this location, 0 for no client side limit.
+		private long quotaPerMinute = 0;
+
+		public String getLocation() {
+			return this.location;
+		}
+
+		public void setLocation(final String location) {
+			this.location = location;
+		}
+
+		public String getEndpoint() {
+			return this.endpoint;
+		}
+
+		public void setEndpoint(final String endpoint) {
+			this.endpoint = endpoint;
+		}
+
+		public long getQuotaPerMinute() {
+			return this.quotaPerMinute;
+		}
+
+		public void setQuotaPerMinute(final long quotaPerMinute) {
+			this.quotaPerMinute = quotaPerMinute;
+		}
+	}
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.autoconfigure.dlp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.google.api.gax.core.CredentialsProvider;
+import com.google.auth.Credentials;
+import com.google.cloud.spring.dlp.CloudDLPTemplate;
+import com.google.privacy.dlp.v2.InfoTypeDescription;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+/**
+ * Verifies the client startup modes selected with
+ * "spring.cloud.gcp.dlp.startup".
+ *
+ * @author Vinesh
+ */
+public class CloudDLPAutoConfigurationTests {
+	private static final String PROJECT_NAME = "hollow-light-of-the-sealed-land";
+
+	ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+			.withConfiguration(AutoConfigurations.of(CloudDLPAutoConfiguration.class))
+			.withBean(CredentialsProvider.class, () -> Mockito.mock(CredentialsProvider.class))
+			.withPropertyValues("spring.cloud.gcp.dlp.project-id=" + PROJECT_NAME);
+
+	@Test
+	public void testLazyStartupDefersClientCreation() {
+		this.contextRunner.withPropertyValues("spring.cloud.gcp.dlp.startup=lazy").run(context -> {
+			assertThat(context).hasSingleBean(CloudDLPTemplate.class);
+			assertThat(context.getBeanFactory().containsSingleton("dlpServiceClient")).isFalse();
+			assertThat(context.getBean(CloudDLPTemplate.class).isClientInitialized()).isFalse();
+			assertThat(context).doesNotHaveBean(CloudDLPPrewarmer.class);
+		});
+	}
+
+	@Test
+	public void testEagerStartupCreatesClient() {
+		this.contextRunner.withPropertyValues("spring.cloud.gcp.dlp.startup=eager").run(context -> {
+			assertThat(context.getBeanFactory().containsSingleton("dlpServiceClient")).isTrue();
+			assertThat(context.getBean(CloudDLPTemplate.class).isClientInitialized()).isTrue();
+			assertThat(context.getBean(CloudDLPHealthIndicator.class).health().getStatus()).isEqualTo(Status.UP);
+		});
+	}
+
+	@Test
+	public void testPrewarmStartupIsOutOfServiceUntilReady() {
+		this.contextRunner.withPropertyValues("spring.cloud.gcp.dlp.startup=prewarm").run(context -> {
+			assertThat(context).hasSingleBean(CloudDLPPrewarmer.class);
+			assertThat(context.getBean(CloudDLPPrewarmer.class).getState()).isEqualTo(CloudDLPPrewarmer.State.PENDING);
+			assertThat(context.getBean(CloudDLPHealthIndicator.class).health().getStatus())
+					.isEqualTo(Status.OUT_OF_SERVICE);
+		});
+	}
+
+	@Test
+	public void testPrewarmReachesReady() throws IOException {
+		final CloudDLPTemplate template = Mockito.mock(CloudDLPTemplate.class);
+		when(template.getInspectInfoTypes()).thenReturn(List.of(InfoTypeDescription.getDefaultInstance()));
+		final CredentialsProvider credentialsProvider = Mockito.mock(CredentialsProvider.class);
+		when(credentialsProvider.getCredentials()).thenReturn(Mockito.mock(Credentials.class));
+
+		prewarmContextRunner(template, credentialsProvider).run(context -> {
+			final CloudDLPPrewarmer prewarmer = context.getBean(CloudDLPPrewarmer.class);
+			assertThat(prewarmer.prewarm()).isTrue();
+			assertThat(prewarmer.getState()).isEqualTo(CloudDLPPrewarmer.State.READY);
+			assertThat(prewarmer.getInfoTypeCount()).isEqualTo(1);
+			assertThat(context.getBean(CloudDLPHealthIndicator.class).health())
+					.satisfies(health -> {
+						assertThat(health.getStatus()).isEqualTo(Status.UP);
+						assertThat(health.getDetails()).containsEntry("infoTypes", 1);
+					});
+		});
+	}
+
+	@Test
+	public void testFailedPrewarmIsDownUntilRetrySucceeds() throws IOException {
+		final CloudDLPTemplate template = Mockito.mock(CloudDLPTemplate.class);
+		when(template.getInspectInfoTypes()).thenReturn(List.of());
+		final CredentialsProvider credentialsProvider = Mockito.mock(CredentialsProvider.class);
+		when(credentialsProvider.getCredentials()).thenThrow(new IOException("metadata server unreachable"))
+				.thenReturn(Mockito.mock(Credentials.class));
+
+		prewarmContextRunner(template, credentialsProvider).run(context -> {
+			final CloudDLPPrewarmer prewarmer = context.getBean(CloudDLPPrewarmer.class);
+			final CloudDLPHealthIndicator indicator = context.getBean(CloudDLPHealthIndicator.class);
+
+			assertThat(prewarmer.prewarm()).isFalse();
+			assertThat(prewarmer.getState()).isEqualTo(CloudDLPPrewarmer.State.FAILED);
+			assertThat(prewarmer.getFailure()).hasMessage("metadata server unreachable");
+			assertThat(indicator.health().getStatus()).isEqualTo(Status.DOWN);
+
+			assertThat(prewarmer.prewarm()).isTrue();
+			assertThat(prewarmer.getState()).isEqualTo(CloudDLPPrewarmer.State.READY);
+			assertThat(prewarmer.getFailure()).isNull();
+			assertThat(indicator.health().getStatus()).isEqualTo(Status.UP);
+		});
+	}
+
+	@Test
+	public void testHealthIndicatorCanBeDisabled() {
+		this.contextRunner.withPropertyValues("management.health.dlp.enabled=false")
+				.run(context -> assertThat(context).doesNotHaveBean(CloudDLPHealthIndicator.class));
+	}
+
+	private static ApplicationContextRunner prewarmContextRunner(final CloudDLPTemplate template,
+			final CredentialsProvider credentialsProvider) {
+		return new ApplicationContextRunner()
+				.withConfiguration(AutoConfigurations.of(CloudDLPAutoConfiguration.class))
+				.withBean(CloudDLPTemplate.class, () -> template)
+				.withBean(CredentialsProvider.class, () -> credentialsProvider)
+				.withPropertyValues("spring.cloud.gcp.dlp.project-id=" + PROJECT_NAME,
+						"spring.cloud.gcp.dlp.startup=prewarm");
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.dlp;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.privacy.dlp.v2.ByteContentItem.BytesType;
+import com.google.privacy.dlp.v2.Finding;
+import com.google.privacy.dlp.v2.InspectContentResponse;
+import com.google.privacy.dlp.v2.InspectResult;
+
+import org.springframework.util.Assert;
+
+/**
+ * Groups concurrent single-item text inspections into table-packed requests.
+ * <p>
+ * Callers sharing the same template, inspection template and info types are
+ * parked for at most {@code maxLinger}; the batch is sent as soon as it holds
+ * {@code maxItems} texts or would exceed {@code maxBytes}. The first caller of a
+ * batch sends it when the linger time elapses or another caller overflows it,
+ * the caller that fills it sends it right away, so no background threads are
+ * involved and no caller waits on a batch it is not part of. Each caller
+ * receives an {@link InspectContentResponse} holding only the findings of its
+ * own row, without the table location of that row.
+ *
+ * @author Vinesh
+ *
+ * @since 2.0.7
+ */
+public class CloudDLPBatchingDispatcher {
+    public static final int DEFAULT_MAX_ITEMS = 50;
+    public static final long DEFAULT_MAX_BYTES = 400L * 1024L;
+    public static final Duration DEFAULT_MAX_LINGER = Duration.ofMillis(5);
+
+    private final int maxItems;
+    private final long maxBytes;
+    private final long maxLingerNanos;
+    private final Map<BatchKey, Batch> pending = new HashMap<>();
+
+    public CloudDLPBatchingDispatcher(final int maxItems, final long maxBytes, final Duration maxLinger) {
+        Assert.isTrue(maxItems > 0, "maxItems must be positive");
+        Assert.isTrue(maxBytes > 0, "maxBytes must be positive");
+        Assert.notNull(maxLinger, "maxLinger must not be null");
+        Assert.isTrue(!maxLinger.isNegative(), "maxLinger must not be negative");
+
+        this.maxItems = maxItems;
+        this.maxBytes = maxBytes;
+        this.maxLingerNanos = maxLinger.toNanos();
+    }
+
+    public CloudDLPBatchingDispatcher() {
+        this(DEFAULT_MAX_ITEMS, DEFAULT_MAX_BYTES, DEFAULT_MAX_LINGER);
+    }
+
+    public int getMaxItems() {
+        return this.maxItems;
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    public Duration getMaxLinger() {
+        return Duration.ofNanos(this.maxLingerNanos);
+    }
+
+    InspectContentResponse dispatch(final CloudDLPTemplate owner, final String text, final String inspectionTemplate,
+            final List<String> infoTypes) {
+        final long size = FindingOffsets.utf8Length(text);
+        if (size >= this.maxBytes || this.maxItems == 1) {
+            return owner.inspectContent(text, BytesType.TEXT_UTF8, inspectionTemplate, infoTypes);
+        }
+
+        final BatchKey key = new BatchKey(owner, inspectionTemplate, infoTypes);
+        final PendingItem item = new PendingItem(text);
+        final Batch batch;
+        Batch full = null;
+        boolean leader = false;
+
+        synchronized (this.pending) {
+            Batch current = this.pending.get(key);
+            if (current != null && current.bytes + size > this.maxBytes) {
+                // The leader of the overflowed batch is woken up and sends it.
+                seal(key, current);
+                current = null;
+            }
+            if (current == null) {
+                current = new Batch(key);
+                this.pending.put(key, current);
+                leader = true;
+            }
+            current.add(item, size);
+            if (current.items.size() >= this.maxItems) {
+                full = seal(key, current);
+                full.claimed = true;
+            }
+            batch = current;
+        }
+
+        if (full != null) {
+            flush(full);
+        } else if (leader) {
+            batch.awaitSealed(this.maxLingerNanos);
+            final boolean send;
+            synchronized (this.pending) {
+                if (this.pending.get(key) == batch) {
+                    seal(key, batch);
+                }
+                send = !batch.claimed;
+            }
+            if (send) {
+                flush(batch);
+            }
+        }
+
+        return item.await();
+    }
+
+    private Batch seal(final BatchKey key, final Batch batch) {
+        this.pending.remove(key);
+        batch.sealed.countDown();
+        return batch;
+    }
+
+    private void flush(final Batch batch) {
+        final List<PendingItem> items = batch.items;
+        final BatchKey key = batch.key;
+        try {
+            if (items.size() == 1) {
+                items.get(0).result.complete(key.owner.inspectContent(items.get(0).text, BytesType.TEXT_UTF8,
+                        key.inspectionTemplate, key.infoTypes));
+                return;
+            }
+
+            final List<String> rows = new ArrayList<>(items.size());
+            for (final PendingItem item : items) {
+                rows.add(item.text);
+            }
+
+            final InspectContentResponse response = key.owner.inspectTable(rows, key.inspectionTemplate,
+                    key.infoTypes);
+            final List<InspectResult.Builder> results = split(response, items.size(), key.owner.getMaxfindings());
+            for (int i = 0; i < items.size(); i++) {
+                items.get(i).result.complete(InspectContentResponse.newBuilder().setResult(results.get(i)).build());
+            }
+        } catch (final RuntimeException | Error e) {
+            // Every parked caller waits on its future, so none may be left incomplete.
+            for (final PendingItem item : items) {
+                item.result.completeExceptionally(e);
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        }
+    }
+
+    private static List<InspectResult.Builder> split(final InspectContentResponse response, final int rows,
+            final int maxFindings) {
+        final boolean truncated = response.getResult().getFindingsTruncated();
+        final List<InspectResult.Builder> results = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            results.add(InspectResult.newBuilder().setFindingsTruncated(truncated));
+        }
+
+        for (final Finding finding : response.getResult().getFindingsList()) {
+            final int row = FindingOffsets.rowIndex(finding);
+            if (row < 0 || row >= rows) {
+                continue;
+            }
+
+            final InspectResult.Builder result = results.get(row);
+            if (maxFindings > 0 && result.getFindingsCount() >= maxFindings) {
+                result.setFindingsTruncated(true);
+            } else {
+                result.addFindings(FindingOffsets.withoutRecordLocation(finding));
+            }
+        }
+
+        return results;
+    }
+
+    private static final class BatchKey {
+        private final CloudDLPTemplate owner;
+        private final String inspectionTemplate;
+        private final List<String> infoTypes;
+
+        private BatchKey(final CloudDLPTemplate owner, final String inspectionTemplate,
+                final List<String> infoTypes) {
+            this.owner = owner;
+            this.inspectionTemplate = inspectionTemplate;
+            this.infoTypes = Objects.isNull(infoTypes) ? Collections.emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(infoTypes));
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof BatchKey)) {
+                return false;
+            }
+            final BatchKey that = (BatchKey) other;
+            return this.owner == that.owner && Objects.equals(this.inspectionTemplate, that.inspectionTemplate)
+                    && this.infoTypes.equals(that.infoTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(this.owner), this.inspectionTemplate, this.infoTypes);
+        }
+    }
+
+    private static final class Batch {
+        private final BatchKey key;
+        private final List<PendingItem> items = new ArrayList<>();
+        private final CountDownLatch sealed = new CountDownLatch(1);
+        private long bytes = 0;
+        // Set when the caller that filled the batch sends it instead of its leader.
+        private boolean claimed = false;
+
+        private Batch(final BatchKey key) {
+            this.key = key;
+        }
+
+        private void add(final PendingItem item, final long size) {
+            this.items.add(item);
+            this.bytes += size;
+        }
+
+        private void awaitSealed(final long nanos) {
+            try {
+                this.sealed.await(nanos, TimeUnit.NANOSECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class PendingItem {
+        private final String text;
+        private final CompletableFuture<InspectContentResponse> result = new CompletableFuture<>();
+
+        private PendingItem(final String text) {
+            this.text = text;
+        }
+
+        private InspectContentResponse await() {
+            try {
+                return this.result.join();
+            } catch (final CompletionException e) {
+                if (e.getCause() instanceof CloudDLPException) {
+                    throw (CloudDLPException) e.getCause();
+                }
+                throw new CloudDLPException("Failed to receive valid response from DLP APIs; batch request failed.",
+                        e);
+            }
+        }
+    }
+}
@@ -0,0 +1,1099 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.dlp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.google.privacy.dlp.v2.ByteContentItem.BytesType;
+import com.google.privacy.dlp.v2.InspectContentResponse;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+/**
+ * Inspects every file of a local directory tree, including the entries of ZIP,
+ * TAR and gzipped TAR archives, on a fork-join pool.
+ * <p>
+ * The content type of each file is inferred from its magic bytes, falling back
+ * to its extension for text formats; images are inspected as images, other
+ * files through {@link CloudDLPTemplate#inspectContent(Resource, BytesType,
+ * String, List)}, which pages large text files. Files of other types, and
+ * archives nested in archives, are counted as unsupported.
+ * <p>
+ * With a checkpoint file, the size, modification time, SHA-256 hash and
+ * findings count of every inspected file are appended to it as the scan goes.
+ * A later scan with the same checkpoint skips files whose size and
+ * modification time, or size and hash, are unchanged, so an interrupted scan
+ * resumes where it stopped.
+ *
+ * @author Vinesh
+ *
+ * @since 2.0.7
+ */
+public class CloudDLPBulkScanner {
+    private static final int HEADER_BYTES = 512;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final String ARCHIVE_SEPARATOR = "!/";
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private static final byte[] PNG = { (byte) 0x89, 'P', 'N', 'G' };
+    private static final byte[] JPEG = { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF };
+    private static final byte[] BMP = { 'B', 'M' };
+    private static final byte[] PDF = { '%', 'P', 'D', 'F' };
+    private static final byte[] ZIP = { 'P', 'K', 3, 4 };
+    private static final byte[] GZIP = { 0x1F, (byte) 0x8B };
+    private static final byte[] USTAR = { 'u', 's', 't', 'a', 'r' };
+    private static final int USTAR_OFFSET = 257;
+    private static final List<String> WORD_EXTENSIONS = Arrays.asList("docx", "docm", "dotx", "dotm");
+
+    private enum Archive {
+        ZIP, TAR, TAR_GZIP
+    }
+
+    private final CloudDLPTemplate template;
+    private final String inspectionTemplate;
+    private final List<String> infoTypes;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private Path checkpoint;
+    private boolean scanArchives = true;
+    private int maxEntrySize = 64 * 1024 * 1024;
+    private long maxPendingBytes = 256L * 1024 * 1024;
+    private Duration progressInterval = Duration.ofSeconds(10);
+    private Consumer<ScanProgress> progressListener;
+    private Consumer<ScanResult> resultListener;
+
+    public CloudDLPBulkScanner(final CloudDLPTemplate template, final String inspectionTemplate,
+            final List<String> infoTypes) {
+        Assert.notNull(template, "CloudDLPTemplate must not be null.");
+
+        this.template = template;
+        this.inspectionTemplate = inspectionTemplate;
+        this.infoTypes = infoTypes == null ? Collections.emptyList() : new ArrayList<>(infoTypes);
+    }
+
+    public CloudDLPBulkScanner(final CloudDLPTemplate template) {
+        this(template, null, Collections.emptyList());
+    }
+
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * Number of worker threads, which is also the maximum number of concurrent
+     * inspection requests.
+     */
+    public void setParallelism(final int parallelism) {
+        Assert.isTrue(parallelism > 0, "parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    public Path getCheckpoint() {
+        return this.checkpoint;
+    }
+
+    /**
+     * File the progress of scans is appended to and resumed from, or
+     * {@code null} to scan every file.
+     */
+    public void setCheckpoint(final Path checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    public boolean isScanArchives() {
+        return this.scanArchives;
+    }
+
+    public void setScanArchives(final boolean scanArchives) {
+        this.scanArchives = scanArchives;
+    }
+
+    public int getMaxEntrySize() {
+        return this.maxEntrySize;
+    }
+
+    /**
+     * Largest archive entry read into memory for inspection; larger entries are
+     * counted as unsupported. Only plain text is paged, so any other file or
+     * entry above the template's inline content limit is unsupported as well.
+     */
+    public void setMaxEntrySize(final int maxEntrySize) {
+        Assert.isTrue(maxEntrySize > 0 && maxEntrySize < Integer.MAX_VALUE, "maxEntrySize must be positive");
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    public long getMaxPendingBytes() {
+        return this.maxPendingBytes;
+    }
+
+    /**
+     * Total size of the archive entries of a file held in memory while waiting
+     * for inspection. Once exceeded, reading waits for the oldest entries to be
+     * inspected; a single larger entry is still inspected on its own.
+     */
+    public void setMaxPendingBytes(final long maxPendingBytes) {
+        Assert.isTrue(maxPendingBytes > 0, "maxPendingBytes must be positive");
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    public Duration getProgressInterval() {
+        return this.progressInterval;
+    }
+
+    public void setProgressInterval(final Duration progressInterval) {
+        Assert.notNull(progressInterval, "progressInterval must not be null");
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * Listener called with the progress of a scan at most once per
+     * {@code progressInterval}, and once when it completes.
+     */
+    public void setProgressListener(final Consumer<ScanProgress> progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Listener called from the worker threads with the result of every
+     * inspected or failed file.
+     */
+    public void setResultListener(final Consumer<ScanResult> resultListener) {
+        this.resultListener = resultListener;
+    }
+
+    /**
+     * Scan a directory tree, blocking until every file has been processed.
+     * Failures of single files are reported to the result listener and counted,
+     * and are retried by the next scan.
+     *
+     * @param root the directory to scan
+     * @return the final progress of the scan
+     * @throws CloudDLPException if the checkpoint file could not be read or
+     *                           written
+     */
+    public ScanProgress scan(final Path root) {
+        Assert.isTrue(root != null && Files.isDirectory(root), "root must be a directory");
+
+        final Scan scan = new Scan(root, loadCheckpoint());
+        final ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        try (Writer writer = openCheckpoint()) {
+            scan.writer = writer;
+            pool.invoke(new DirectoryTask(scan, root));
+        } catch (final IOException e) {
+            throw new CloudDLPException("Failed to write scan checkpoint " + this.checkpoint + ".", e);
+        } finally {
+            pool.shutdown();
+        }
+
+        final ScanProgress progress = scan.progress();
+        if (this.progressListener != null) {
+            this.progressListener.accept(progress);
+        }
+        return progress;
+    }
+
+    private Map<String, Checkpoint> loadCheckpoint() {
+        final Map<String, Checkpoint> checkpoints = new HashMap<>();
+        if (this.checkpoint == null || !Files.exists(this.checkpoint)) {
+            return checkpoints;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(this.checkpoint, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final Checkpoint entry = Checkpoint.parse(line);
+                if (entry != null) {
+                    checkpoints.put(entry.key, entry);
+                }
+            }
+        } catch (final IOException e) {
+            throw new CloudDLPException("Failed to read scan checkpoint " + this.checkpoint + ".", e);
+        }
+        return checkpoints;
+    }
+
+    private Writer openCheckpoint() throws IOException {
+        if (this.checkpoint == null) {
+            return null;
+        }
+
+        // Terminate a line torn by an interrupted scan before appending to it.
+        boolean torn = false;
+        if (Files.exists(this.checkpoint) && Files.size(this.checkpoint) > 0) {
+            try (SeekableByteChannel channel = Files.newByteChannel(this.checkpoint)) {
+                final ByteBuffer last = ByteBuffer.allocate(1);
+                channel.position(channel.size() - 1).read(last);
+                torn = last.get(0) != '\n';
+            }
+        }
+        final Writer writer = Files.newBufferedWriter(this.checkpoint, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (torn) {
+            writer.write('\n');
+        }
+        return writer;
+    }
+
+    /**
+     * Infer the content type of a file from its first bytes and its name.
+     *
+     * @return the type, or {@code null} if the file cannot be inspected
+     */
+    static BytesType detectType(final String name, final byte[] header) {
+        final String extension = extension(name);
+        if (startsWith(header, PNG)) {
+            return BytesType.IMAGE_PNG;
+        }
+        if (startsWith(header, JPEG)) {
+            return BytesType.IMAGE_JPEG;
+        }
+        if (startsWith(header, PDF)) {
+            return BytesType.PDF;
+        }
+        if (startsWith(header, ZIP)) {
+            return WORD_EXTENSIONS.contains(extension) ? BytesType.WORD_DOCUMENT : null;
+        }
+        // Two bytes are too weak a signature to trust without the extension.
+        if (startsWith(header, BMP) && "bmp".equals(extension)) {
+            return BytesType.IMAGE_BMP;
+        }
+        if (!isText(header)) {
+            return null;
+        }
+
+        switch (extension) {
+        case "svg":
+            return BytesType.IMAGE_SVG;
+        case "csv":
+            return BytesType.CSV;
+        case "tsv":
+            return BytesType.TSV;
+        default:
+            return BytesType.TEXT_UTF8;
+        }
+    }
+
+    /**
+     * CSV and TSV content above the inline limit cannot be paged as a table, so
+     * it is inspected as plain text instead. Other content above the limit
+     * cannot be paged at all and is unsupported.
+     */
+    private BytesType inspectableType(final BytesType type, final long size) {
+        final long limit = this.template.getInlineContentLimit();
+        if (type == null || limit == 0 || size <= limit) {
+            return type;
+        }
+        return type == BytesType.TEXT_UTF8 || type == BytesType.CSV || type == BytesType.TSV ? BytesType.TEXT_UTF8
+                : null;
+    }
+
+    private static Archive detectArchive(final String name, final byte[] header) {
+        final String lowerName = name.toLowerCase(Locale.ROOT);
+        if (startsWith(header, ZIP) && !WORD_EXTENSIONS.contains(extension(name))) {
+            return Archive.ZIP;
+        }
+        if (startsWith(header, GZIP) && (lowerName.endsWith(".tar.gz") || lowerName.endsWith(".tgz"))) {
+            return Archive.TAR_GZIP;
+        }
+        if (header.length >= USTAR_OFFSET + USTAR.length
+                && Arrays.equals(header, USTAR_OFFSET, USTAR_OFFSET + USTAR.length, USTAR, 0, USTAR.length)) {
+            return Archive.TAR;
+        }
+        return null;
+    }
+
+    private static boolean startsWith(final byte[] bytes, final byte[] prefix) {
+        return bytes.length >= prefix.length && Arrays.equals(bytes, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    /**
+     * Whether the bytes look like text: no NUL bytes and few control characters.
+     */
+    private static boolean isText(final byte[] bytes) {
+        final int length = Math.min(bytes.length, HEADER_BYTES);
+        if (length == 0) {
+            return false;
+        }
+        int control = 0;
+        for (int i = 0; i < length; i++) {
+            final int b = bytes[i] & 0xFF;
+            if (b == 0) {
+                return false;
+            }
+            if ((b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f') || b == 0x7F) {
+                control++;
+            }
+        }
+        return control * 10 < length;
+    }
+
+    private static String extension(final String name) {
+        final int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new CloudDLPException("Failed to initialize " + HASH_ALGORITHM + " for change detection.", e);
+        }
+    }
+
+    private static String hash(final Path file) throws IOException {
+        final MessageDigest digest = digest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            drain(in);
+        }
+        return hex(digest.digest());
+    }
+
+    private static String hash(final byte[] data) {
+        return hex(digest().digest(data));
+    }
+
+    private static void drain(final InputStream in) throws IOException {
+        final byte[] buffer = new byte[BUFFER_BYTES];
+        while (in.read(buffer) >= 0) {
+            // Read to the end for the digest.
+        }
+    }
+
+    private static String hex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Progress of a scan.
+     */
+    public static final class ScanProgress {
+        private final long filesScanned;
+        private final long filesSkipped;
+        private final long filesUnsupported;
+        private final long filesFailed;
+        private final long bytesScanned;
+        private final long findings;
+        private final Duration elapsed;
+
+        private ScanProgress(final long filesScanned, final long filesSkipped, final long filesUnsupported,
+                final long filesFailed, final long bytesScanned, final long findings, final Duration elapsed) {
+            this.filesScanned = filesScanned;
+            this.filesSkipped = filesSkipped;
+            this.filesUnsupported = filesUnsupported;
+            this.filesFailed = filesFailed;
+            this.bytesScanned = bytesScanned;
+            this.findings = findings;
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * Number of files inspected by this scan.
+         */
+        public long getFilesScanned() {
+            return this.filesScanned;
+        }
+
+        /**
+         * Number of files left out as unchanged since the checkpoint.
+         */
+        public long getFilesSkipped() {
+            return this.filesSkipped;
+        }
+
+        public long getFilesUnsupported() {
+            return this.filesUnsupported;
+        }
+
+        public long getFilesFailed() {
+            return this.filesFailed;
+        }
+
+        public long getBytesScanned() {
+            return this.bytesScanned;
+        }
+
+        public long getFindings() {
+            return this.findings;
+        }
+
+        public Duration getElapsed() {
+            return this.elapsed;
+        }
+
+        public double getFilesPerSecond() {
+            return perSecond(this.filesScanned);
+        }
+
+        public double getBytesPerSecond() {
+            return perSecond(this.bytesScanned);
+        }
+
+        private double perSecond(final long count) {
+            final long nanos = this.elapsed.toNanos();
+            return nanos == 0 ? 0 : count * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%d files scanned (%.1f/s, %.1f MB/s), %d skipped, %d unsupported, %d failed, %d findings",
+                    this.filesScanned, getFilesPerSecond(), getBytesPerSecond() / 1e6, this.filesSkipped,
+                    this.filesUnsupported, this.filesFailed, this.findings);
+        }
+    }
+
+    /**
+     * Outcome of the inspection of a single file.
+     */
+    public static final class ScanResult {
+        private final String path;
+        private final BytesType bytesType;
+        private final long size;
+        private final InspectContentResponse response;
+        private final Exception failure;
+
+        private ScanResult(final String path, final BytesType bytesType, final long size,
+                final InspectContentResponse response, final Exception failure) {
+            this.path = path;
+            this.bytesType = bytesType;
+            this.size = size;
+            this.response = response;
+            this.failure = failure;
+        }
+
+        /**
+         * Path of the file relative to the scanned directory, with {@code /}
+         * separators; archive entries are named {@code archive!/entry}.
+         */
+        public String getPath() {
+            return this.path;
+        }
+
+        public BytesType getBytesType() {
+            return this.bytesType;
+        }
+
+        public long getSize() {
+            return this.size;
+        }
+
+        /**
+         * The inspection response, or {@code null} if the file failed.
+         */
+        public InspectContentResponse getResponse() {
+            return this.response;
+        }
+
+        public Exception getFailure() {
+            return this.failure;
+        }
+
+        public boolean isFailed() {
+            return this.failure != null;
+        }
+    }
+
+    /**
+     * State shared by the tasks of one scan.
+     */
+    private final class Scan {
+        private final Path root;
+        private final Map<String, Checkpoint> previous;
+        private final Path excluded;
+        private final long start = System.nanoTime();
+        private final AtomicLong lastReport = new AtomicLong(this.start);
+        private final LongAdder scanned = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder unsupported = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder findings = new LongAdder();
+        private Writer writer;
+
+        private Scan(final Path root, final Map<String, Checkpoint> previous) {
+            this.root = root;
+            this.previous = previous;
+            this.excluded = checkpoint != null ? checkpoint.toAbsolutePath().normalize() : null;
+        }
+
+        private String key(final Path path) {
+            return this.root.relativize(path).toString().replace(File.separatorChar, '/');
+        }
+
+        /**
+         * Whether a file is the checkpoint file itself, which is written while
+         * the scan runs and is never inspected.
+         */
+        private boolean excluded(final Path file) {
+            return this.excluded != null && this.excluded.equals(file.toAbsolutePath().normalize());
+        }
+
+        /**
+         * Whether the checkpoint holds the same content, appending the new
+         * modification time when only the hash matched.
+         */
+        private boolean unchanged(final String key, final long size, final long modified, final String hash) {
+            final Checkpoint entry = this.previous.get(key);
+            if (entry == null || entry.size != size) {
+                return false;
+            }
+            if (entry.modified != modified) {
+                if (hash == null || !hash.equals(entry.hash)) {
+                    return false;
+                }
+                record(new Checkpoint(key, size, modified, hash, entry.findings));
+            }
+            this.skipped.increment();
+            report();
+            return true;
+        }
+
+        private void scanned(final Checkpoint entry, final BytesType type, final InspectContentResponse response) {
+            record(entry);
+            this.scanned.increment();
+            this.bytes.add(entry.size);
+            this.findings.add(entry.findings);
+            publish(new ScanResult(entry.key, type, entry.size, response, null));
+        }
+
+        private void unsupported() {
+            this.unsupported.increment();
+            report();
+        }
+
+        private void failed(final String key, final BytesType type, final long size, final Exception failure) {
+            this.failed.increment();
+            publish(new ScanResult(key, type, size, null, failure));
+        }
+
+        private void record(final Checkpoint entry) {
+            if (this.writer == null) {
+                return;
+            }
+            synchronized (this.writer) {
+                try {
+                    this.writer.write(entry.format());
+                    this.writer.write('\n');
+                    this.writer.flush();
+                } catch (final IOException e) {
+                    throw new CloudDLPException("Failed to write scan checkpoint " + checkpoint + ".", e);
+                }
+            }
+        }
+
+        private void publish(final ScanResult result) {
+            if (resultListener != null) {
+                resultListener.accept(result);
+            }
+            report();
+        }
+
+        private void report() {
+            if (progressListener == null) {
+                return;
+            }
+            final long now = System.nanoTime();
+            final long last = this.lastReport.get();
+            if (now - last >= progressInterval.toNanos() && this.lastReport.compareAndSet(last, now)) {
+                progressListener.accept(progress());
+            }
+        }
+
+        private ScanProgress progress() {
+            return new ScanProgress(this.scanned.sum(), this.skipped.sum(), this.unsupported.sum(),
+                    this.failed.sum(), this.bytes.sum(), this.findings.sum(),
+                    Duration.ofNanos(System.nanoTime() - this.start));
+        }
+    }
+
+    private final class DirectoryTask extends RecursiveAction {
+        private final Scan scan;
+        private final Path directory;
+
+        private DirectoryTask(final Scan scan, final Path directory) {
+            this.scan = scan;
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            final List<RecursiveAction> tasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.directory)) {
+                for (final Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        tasks.add(new DirectoryTask(this.scan, entry));
+                    } else if (Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS) && !this.scan.excluded(entry)) {
+                        tasks.add(new FileTask(this.scan, entry));
+                    }
+                }
+            } catch (final IOException | DirectoryIteratorException e) {
+                this.scan.failed(this.scan.key(this.directory), null, 0, e);
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    private final class FileTask extends RecursiveAction {
+        private final Scan scan;
+        private final Path file;
+
+        private FileTask(final Scan scan, final Path file) {
+            this.scan = scan;
+            this.file = file;
+        }
+
+        @Override
+        protected void compute() {
+            final String key = this.scan.key(this.file);
+            BytesType type = null;
+            long size = 0;
+            try {
+                final BasicFileAttributes attributes = Files.readAttributes(this.file, BasicFileAttributes.class);
+                size = attributes.size();
+                final long modified = attributes.lastModifiedTime().toMillis();
+                final byte[] header;
+                try (InputStream in = Files.newInputStream(this.file)) {
+                    header = in.readNBytes(HEADER_BYTES);
+                }
+
+                final String name = this.file.getFileName().toString();
+                final Archive archive = scanArchives ? detectArchive(name, header) : null;
+                if (archive != null) {
+                    if (!this.scan.unchanged(key, size, modified, null)) {
+                        scanArchive(key, archive, size, modified);
+                    }
+                    return;
+                }
+
+                type = inspectableType(detectType(name, header), size);
+                if (type == null) {
+                    this.scan.unsupported();
+                    return;
+                }
+                // Hashing is only needed to record the file or to tell a touched file from a changed one.
+                final Checkpoint entry = this.scan.previous.get(key);
+                final boolean touched = entry == null || entry.size != size || entry.modified != modified;
+                final String hash = checkpoint != null && touched ? hash(this.file) : null;
+                if (!this.scan.unchanged(key, size, modified, hash)) {
+                    final InspectContentResponse response = inspect(new FileSystemResource(this.file), type);
+                    this.scan.scanned(new Checkpoint(key, size, modified, hash,
+                            response.getResult().getFindingsCount()), type, response);
+                }
+            } catch (final IOException | RuntimeException e) {
+                this.scan.failed(key, type, size, e);
+            }
+        }
+
+        /**
+         * Read the entries of an archive in order and inspect them in parallel,
+         * holding at most twice the parallelism of entries and about
+         * {@code maxPendingBytes} of their content in memory. The archive itself
+         * is checkpointed once all its entries succeeded.
+         */
+        private void scanArchive(final String key, final Archive archive, final long size, final long modified)
+                throws IOException {
+            final MessageDigest digest = digest();
+            final AtomicInteger failures = new AtomicInteger();
+            final LongAdder findings = new LongAdder();
+            final Deque<ForkJoinTask<?>> pending = new ArrayDeque<>();
+            final Deque<Integer> pendingSizes = new ArrayDeque<>();
+            long pendingBytes = 0;
+
+            try (InputStream in = new DigestInputStream(
+                    new BufferedInputStream(Files.newInputStream(this.file), BUFFER_BYTES), digest)) {
+                final EntryReader reader = archive == Archive.ZIP ? new ZipReader(in)
+                        : new TarReader(archive == Archive.TAR_GZIP ? new GZIPInputStream(in, BUFFER_BYTES) : in);
+                ArchiveEntry entry;
+                while ((entry = reader.next()) != null) {
+                    final ForkJoinTask<?> task = scanEntry(key + ARCHIVE_SEPARATOR + entry.name, entry, failures,
+                            findings);
+                    if (task != null) {
+                        pending.add(task);
+                        pendingSizes.add(entry.data.length);
+                        pendingBytes += entry.data.length;
+                    }
+                    while (!pending.isEmpty()
+                            && (pending.size() >= 2 * parallelism || pendingBytes > maxPendingBytes)) {
+                        pending.poll().join();
+                        pendingBytes -= pendingSizes.poll();
+                    }
+                }
+                drain(in);
+            } finally {
+                while (!pending.isEmpty()) {
+                    pending.poll().join();
+                }
+            }
+
+            if (failures.get() == 0) {
+                this.scan.record(new Checkpoint(key, size, modified, hex(digest.digest()), findings.sum()));
+            }
+        }
+
+        private ForkJoinTask<?> scanEntry(final String key, final ArchiveEntry entry, final AtomicInteger failures,
+                final LongAdder findings) {
+            if (entry.data == null) {
+                this.scan.unsupported();
+                return null;
+            }
+            final BytesType type = inspectableType(detectType(entry.name, entry.data), entry.data.length);
+            if (type == null) {
+                this.scan.unsupported();
+                return null;
+            }
+            final String hash = checkpoint != null ? hash(entry.data) : null;
+            final Checkpoint previous = this.scan.previous.get(key);
+            if (this.scan.unchanged(key, entry.data.length, entry.modified, hash)) {
+                findings.add(previous.findings);
+                return null;
+            }
+
+            return ForkJoinTask.adapt(() -> {
+                try {
+                    final InspectContentResponse response = inspect(new ByteArrayResource(entry.data), type);
+                    final int count = response.getResult().getFindingsCount();
+                    findings.add(count);
+                    this.scan.scanned(new Checkpoint(key, entry.data.length, entry.modified, hash, count), type,
+                            response);
+                } catch (final RuntimeException e) {
+                    failures.incrementAndGet();
+                    this.scan.failed(key, type, entry.data.length, e);
+                }
+            }).fork();
+        }
+
+        private InspectContentResponse inspect(final Resource resource, final BytesType type) {
+            if (type == BytesType.IMAGE_PNG || type == BytesType.IMAGE_JPEG || type == BytesType.IMAGE_BMP
+                    || type == BytesType.IMAGE_SVG) {
+                return template.inspectImage(resource, type, inspectionTemplate, infoTypes);
+            }
+            return template.inspectContent(resource, type, inspectionTemplate, infoTypes);
+        }
+
+        private byte[] readEntry(final InputStream in, final long size) throws IOException {
+            if (size > maxEntrySize) {
+                return null;
+            }
+            final byte[] data = in.readNBytes(maxEntrySize + 1);
+            return data.length > maxEntrySize ? null : data;
+        }
+
+        private abstract class EntryReader {
+            /**
+             * Next regular file entry, or {@code null} at the end of the archive.
+             */
+            abstract ArchiveEntry next() throws IOException;
+        }
+
+        private final class ZipReader extends EntryReader {
+            private final ZipInputStream zip;
+
+            private ZipReader(final InputStream in) {
+                this.zip = new ZipInputStream(in);
+            }
+
+            @Override
+            ArchiveEntry next() throws IOException {
+                ZipEntry entry;
+                while ((entry = this.zip.getNextEntry()) != null) {
+                    if (!entry.isDirectory()) {
+                        return new ArchiveEntry(entry.getName(), entry.getTime(), readEntry(this.zip, entry.getSize()));
+                    }
+                }
+                return null;
+            }
+        }
+
+        /**
+         * Reads the regular files of a ustar or GNU tar stream.
+         */
+        private final class TarReader extends EntryReader {
+            private static final int BLOCK = 512;
+
+            private final InputStream in;
+
+            private TarReader(final InputStream in) {
+                this.in = in;
+            }
+
+            @Override
+            ArchiveEntry next() throws IOException {
+                String longName = null;
+                while (true) {
+                    final byte[] header = this.in.readNBytes(BLOCK);
+                    if (header.length < BLOCK || header[0] == 0) {
+                        return null;
+                    }
+
+                    final long size = octal(header, 124, 12);
+                    final char typeFlag = (char) header[156];
+                    if (typeFlag == 'L') {
+                        longName = string(readBody(size), 0, (int) Math.min(size, Integer.MAX_VALUE));
+                        continue;
+                    }
+                    if (typeFlag == 'x') {
+                        final String path = paxPath(readBody(size));
+                        longName = path != null ? path : longName;
+                        continue;
+                    }
+                    if (typeFlag != '0' && typeFlag != '\0') {
+                        skipBody(size);
+                        continue;
+                    }
+
+                    String name = longName;
+                    if (name == null) {
+                        name = string(header, 0, 100);
+                        final String prefix = startsWith(Arrays.copyOfRange(header, USTAR_OFFSET, BLOCK), USTAR)
+                                ? string(header, 345, 155) : "";
+                        name = prefix.isEmpty() ? name : prefix + "/" + name;
+                    }
+                    if (name.startsWith("./")) {
+                        name = name.substring(2);
+                    }
+                    final long modified = octal(header, 136, 12) * 1000;
+                    final byte[] data = readEntry(new LimitedInputStream(this.in, size), size);
+                    skipBody(size - (data == null ? 0 : data.length));
+                    skipPadding(size);
+                    return new ArchiveEntry(name, modified, data);
+                }
+            }
+
+            private byte[] readBody(final long size) throws IOException {
+                final byte[] body = this.in.readNBytes((int) Math.min(size, maxEntrySize));
+                skipBody(size - body.length);
+                skipPadding(size);
+                return body;
+            }
+
+            /**
+             * The {@code path} record of a PAX extended header, made of
+             * {@code "<length> <key>=<value>\n"} records whose length counts
+             * every byte of the record.
+             */
+            private String paxPath(final byte[] body) throws IOException {
+                String path = null;
+                int offset = 0;
+                while (offset < body.length && body[offset] != 0) {
+                    int space = offset;
+                    while (space < body.length && body[space] != ' ') {
+                        space++;
+                    }
+                    final int length;
+                    try {
+                        length = Integer.parseInt(new String(body, offset, space - offset, StandardCharsets.US_ASCII));
+                    } catch (final NumberFormatException e) {
+                        throw new IOException("Malformed PAX extended header.", e);
+                    }
+                    final int end = offset + length;
+                    if (space >= body.length || length <= 0 || end > body.length || end < space + 2) {
+                        throw new IOException("Malformed PAX extended header.");
+                    }
+                    final String record = new String(body, space + 1, end - space - 2, StandardCharsets.UTF_8);
+                    if (record.startsWith("path=")) {
+                        path = record.substring("path=".length());
+                    }
+                    offset = end;
+                }
+                return path;
+            }
+
+            private void skipBody(final long size) throws IOException {
+                long remaining = size;
+                while (remaining > 0) {
+                    final long skipped = this.in.skip(remaining);
+                    if (skipped <= 0) {
+                        if (this.in.read() < 0) {
+                            throw new IOException("Unexpected end of tar archive.");
+                        }
+                        remaining--;
+                    } else {
+                        remaining -= skipped;
+                    }
+                }
+            }
+
+            private void skipPadding(final long size) throws IOException {
+                final long padding = (BLOCK - size % BLOCK) % BLOCK;
+                skipBody(padding);
+            }
+
+            private long octal(final byte[] header, final int offset, final int length) throws IOException {
+                long value = 0;
+                for (int i = offset; i < offset + length; i++) {
+                    final byte b = header[i];
+                    if (b == 0 || b == ' ') {
+                        if (value > 0) {
+                            break;
+                        }
+                        continue;
+                    }
+                    if (b < '0' || b > '7') {
+                        throw new IOException("Malformed tar header.");
+                    }
+                    value = (value << 3) + (b - '0');
+                }
+                return value;
+            }
+
+            private String string(final byte[] bytes, final int offset, final int length) {
+                int end = offset;
+                while (end < offset + length && end < bytes.length && bytes[end] != 0) {
+                    end++;
+                }
+                return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * Exposes at most a given number of bytes of a stream, leaving the rest
+     * unread.
+     */
+    private static final class LimitedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        private LimitedInputStream(final InputStream in, final long limit) {
+            this.in = in;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            final int b = this.in.read();
+            if (b >= 0) {
+                this.remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            final int read = this.in.read(buffer, offset, (int) Math.min(length, this.remaining));
+            if (read > 0) {
+                this.remaining -= read;
+            }
+            return read;
+        }
+    }
+
+    private static final class ArchiveEntry {
+        private final String name;
+        private final long modified;
+        private final byte[] data;
+
+        private ArchiveEntry(final String name, final long modified, final byte[] data) {
+            this.name = name;
+            this.modified = modified;
+            this.data = data;
+        }
+    }
+
+    /**
+     * A line of the checkpoint file: URL-encoded path, size, modification time
+     * in milliseconds, hex SHA-256 hash and findings count.
+     */
+    private static final class Checkpoint {
+        private final String key;
+        private final long size;
+        private final long modified;
+        private final String hash;
+        private final long findings;
+
+        private Checkpoint(final String key, final long size, final long modified, final String hash,
+                final long findings) {
+            this.key = key;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.findings = findings;
+        }
+
+        private String format() {
+            return URLEncoder.encode(this.key, StandardCharsets.UTF_8) + ' ' + this.size + ' ' + this.modified + ' '
+                    + (this.hash == null ? "-" : this.hash) + ' ' + this.findings;
+        }
+
+        private static Checkpoint parse(final String line) {
+            final String[] fields = line.split(" ");
+            if (fields.length != 5) {
+                return null;
+            }
+            try {
+                return new Checkpoint(URLDecoder.decode(fields[0], StandardCharsets.UTF_8), Long.parseLong(fields[1]),
+                        Long.parseLong(fields[2]), "-".equals(fields[3]) ? null : fields[3],
+                        Long.parseLong(fields[4]));
+            } catch (final IllegalArgumentException e) {
+                // A line torn by an interrupted scan.
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.dlp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.privacy.dlp.v2.ByteContentItem.BytesType;
+import com.google.privacy.dlp.v2.Finding;
+import com.google.privacy.dlp.v2.InspectContentResponse;
+import com.google.privacy.dlp.v2.InspectResult;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.util.Assert;
+
+/**
+ * Re-inspects edited documents by sending only their changed lines.
+ * <p>
+ * For every document the inspector keeps a hash, the sizes and the findings of
+ * each line. A new version is diffed against the previous one by matching
+ * lines on their hashes along a longest common subsequence, after trimming the
+ * common leading and trailing lines. Each run of changed lines, and each place
+ * lines were removed from, is widened by {@code contextLines} on each side so
+ * findings spanning an edit boundary are found again; overlapping or adjacent
+ * runs are coalesced and every resulting hunk is inspected in its own request.
+ * Findings of matched lines are moved to their new offsets and merged with the
+ * new ones into a response covering the whole document. When the lines left
+ * after trimming are too many to match, they are all treated as changed.
+ * <p>
+ * Findings are attributed to the line they start in. A finding starting more
+ * than {@code contextLines} before an edit and extending into it is kept as
+ * it was. Lines inspected by a request whose findings were truncated stay
+ * marked as such, so the merged response is truncated as long as any of them
+ * is left unchanged.
+ * <p>
+ * The state of at most {@code maxDocuments} documents is kept; the least
+ * recently inspected ones are dropped first and fully inspected again on their
+ * next version.
+ *
+ * @author Vinesh
+ *
+ * @since 2.0.7
+ */
+public class CloudDLPIncrementalInspector {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // Largest table of line pairs compared when matching the changed middle of a document.
+    private static final long MAX_DIFF_CELLS = 1 << 20;
+
+    private final CloudDLPTemplate template;
+    private final String inspectionTemplate;
+    private final List<String> infoTypes;
+    private final Map<String, Document> documents = Collections.synchronizedMap(
+            new LinkedHashMap<String, Document>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Document> eldest) {
+                    return size() > CloudDLPIncrementalInspector.this.maxDocuments;
+                }
+            });
+    private int contextLines = 2;
+    private volatile int maxDocuments = 1000;
+
+    public CloudDLPIncrementalInspector(final CloudDLPTemplate template, final String inspectionTemplate,
+            final List<String> infoTypes) {
+        Assert.notNull(template, "CloudDLPTemplate must not be null.");
+
+        this.template = template;
+        this.inspectionTemplate = inspectionTemplate;
+        this.infoTypes = infoTypes == null ? Collections.emptyList() : new ArrayList<>(infoTypes);
+    }
+
+    public CloudDLPIncrementalInspector(final CloudDLPTemplate template) {
+        this(template, null, Collections.emptyList());
+    }
+
+    public int getContextLines() {
+        return this.contextLines;
+    }
+
+    public void setContextLines(final int contextLines) {
+        if (contextLines < 0) {
+            throw new IllegalArgumentException("contextLines must be positive");
+        }
+        this.contextLines = contextLines;
+    }
+
+    public int getMaxDocuments() {
+        return this.maxDocuments;
+    }
+
+    public void setMaxDocuments(final int maxDocuments) {
+        if (maxDocuments <= 0) {
+            throw new IllegalArgumentException("maxDocuments must be positive");
+        }
+        this.maxDocuments = maxDocuments;
+    }
+
+    /**
+     * Inspect the current version of a document, re-using the findings of lines
+     * left unchanged since the previous call for the same document.
+     *
+     * @param documentId identifies the document across versions
+     * @param text       the full text of the current version
+     * @return the findings of the whole document
+     * @throws CloudDLPException if a malformed response is received from the
+     *                           Cloud DLP APIs; the cached state is left as it
+     *                           was
+     */
+    public InspectContentResponse inspect(final String documentId, final String text) {
+        Assert.notNull(documentId, "documentId not provided");
+        Assert.notNull(text, "text not provided");
+
+        final Document document = this.documents.computeIfAbsent(documentId, id -> new Document());
+        synchronized (document) {
+            final List<Line> lines = split(text);
+            final List<Line> previous = document.lines;
+            final int[] matched = match(previous, lines);
+
+            final List<int[]> hunks = hunks(matched, previous == null ? 0 : previous.size());
+            int hunk = 0;
+            for (int i = 0; i < lines.size(); i++) {
+                while (hunk < hunks.size() && hunks.get(hunk)[1] <= i) {
+                    hunk++;
+                }
+                if (hunk == hunks.size() || i < hunks.get(hunk)[0]) {
+                    lines.get(i).carryOver(previous.get(matched[i]));
+                }
+            }
+
+            for (final int[] region : hunks) {
+                final InspectContentResponse response = inspectRegion(text, lines, region[0], region[1]);
+                assign(lines, region[0], region[1], response.getResult().getFindingsList());
+                for (int i = region[0]; i < region[1]; i++) {
+                    lines.get(i).truncated = response.getResult().getFindingsTruncated();
+                }
+            }
+
+            document.lines = lines;
+            return merge(lines);
+        }
+    }
+
+    /**
+     * Index of the previous line each current line is matched with, or -1 for
+     * a changed line.
+     */
+    private static int[] match(final List<Line> previous, final List<Line> lines) {
+        final int[] matched = new int[lines.size()];
+        Arrays.fill(matched, -1);
+        if (previous == null) {
+            return matched;
+        }
+
+        final int common = Math.min(previous.size(), lines.size());
+        int prefix = 0;
+        while (prefix < common && lines.get(prefix).sameAs(previous.get(prefix))) {
+            matched[prefix] = prefix;
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < common - prefix && lines.get(lines.size() - 1 - suffix)
+                .sameAs(previous.get(previous.size() - 1 - suffix))) {
+            matched[lines.size() - 1 - suffix] = previous.size() - 1 - suffix;
+            suffix++;
+        }
+
+        final int n = lines.size() - suffix - prefix;
+        final int m = previous.size() - suffix - prefix;
+        if (n == 0 || m == 0 || (long) n * m > MAX_DIFF_CELLS) {
+            return matched;
+        }
+
+        // lengths[i][j] is the length of the longest common subsequence of the lines from i and j on.
+        final int[][] lengths = new int[n + 1][m + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                lengths[i][j] = lines.get(prefix + i).sameAs(previous.get(prefix + j))
+                        ? lengths[i + 1][j + 1] + 1
+                        : Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+            }
+        }
+        int i = 0;
+        int j = 0;
+        while (i < n && j < m) {
+            if (lines.get(prefix + i).sameAs(previous.get(prefix + j))) {
+                matched[prefix + i] = prefix + j;
+                i++;
+                j++;
+            } else if (lengths[i + 1][j] >= lengths[i][j + 1]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * The line ranges to inspect: changed lines and the places lines were
+     * removed from, widened by {@code contextLines} and coalesced when they
+     * overlap or touch.
+     */
+    private List<int[]> hunks(final int[] matched, final int previousLines) {
+        final List<int[]> hunks = new ArrayList<>();
+        int i = 0;
+        while (i <= matched.length) {
+            final int from = i;
+            while (i < matched.length && matched[i] < 0) {
+                i++;
+            }
+            // Removed lines leave a gap between the previous lines matched before and after.
+            final int before = from == 0 ? -1 : matched[from - 1];
+            final int after = i == matched.length ? previousLines : matched[i];
+            if (i > from || after != before + 1) {
+                final int start = Math.max(0, from - this.contextLines);
+                final int end = Math.min(matched.length, i + this.contextLines);
+                final int[] last = hunks.isEmpty() ? null : hunks.get(hunks.size() - 1);
+                if (last != null && start <= last[1]) {
+                    last[1] = Math.max(last[1], end);
+                } else if (start < end) {
+                    hunks.add(new int[] { start, end });
+                }
+            }
+            i++;
+        }
+        return hunks;
+    }
+
+    /**
+     * Drop the cached state of a document.
+     */
+    public void forget(final String documentId) {
+        this.documents.remove(documentId);
+    }
+
+    private InspectContentResponse inspectRegion(final String text, final List<Line> lines, final int from,
+            final int to) {
+        final String region = text.substring(lines.get(from).charStart,
+                lines.get(to - 1).charStart + lines.get(to - 1).chars);
+        long bytes = 0;
+        for (int i = from; i < to; i++) {
+            bytes += lines.get(i).bytes;
+        }
+
+        // Large regions go through the resource path, which pages text above the inline limit.
+        if (this.template.getInlineContentLimit() > 0 && bytes > this.template.getInlineContentLimit()) {
+            return this.template.inspectContent(new ByteArrayResource(region.getBytes(StandardCharsets.UTF_8)),
+                    BytesType.TEXT_UTF8, this.inspectionTemplate, this.infoTypes);
+        }
+        return this.template.inspectContent(region, BytesType.TEXT_UTF8, this.inspectionTemplate, this.infoTypes);
+    }
+
+    /**
+     * Store the findings of an inspected region on the lines they start in,
+     * relative to the start of those lines.
+     */
+    private static void assign(final List<Line> lines, final int from, final int to, final List<Finding> findings) {
+        final List<List<Finding>> assigned = new ArrayList<>(to - from);
+        final long[] codepointStarts = new long[to - from];
+        final long[] byteStarts = new long[to - from];
+        long codepoints = 0;
+        long bytes = 0;
+        for (int i = from; i < to; i++) {
+            assigned.add(new ArrayList<>());
+            codepointStarts[i - from] = codepoints;
+            byteStarts[i - from] = bytes;
+            codepoints += lines.get(i).codepoints;
+            bytes += lines.get(i).bytes;
+        }
+
+        for (final Finding finding : findings) {
+            final long start = finding.getLocation().getCodepointRange().getStart();
+            int line = Arrays.binarySearch(codepointStarts, start);
+            if (line < 0) {
+                line = -line - 2;
+            }
+            line = Math.max(0, Math.min(line, to - from - 1));
+            assigned.get(line).add(FindingOffsets.shift(finding, -byteStarts[line], -codepointStarts[line]));
+        }
+
+        for (int i = from; i < to; i++) {
+            lines.get(i).findings = assigned.get(i - from);
+        }
+    }
+
+    private static InspectContentResponse merge(final List<Line> lines) {
+        final InspectResult.Builder result = InspectResult.newBuilder();
+        long codepoints = 0;
+        long bytes = 0;
+        for (final Line line : lines) {
+            if (line.truncated) {
+                result.setFindingsTruncated(true);
+            }
+            for (final Finding finding : line.findings) {
+                result.addFindings(FindingOffsets.shift(finding, bytes, codepoints));
+            }
+            codepoints += line.codepoints;
+            bytes += line.bytes;
+        }
+        return InspectContentResponse.newBuilder().setResult(result).build();
+    }
+
+    private static List<Line> split(final String text) {
+        final List<Line> lines = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            final int newline = text.indexOf('\n', start);
+            final int end = newline < 0 ? text.length() : newline + 1;
+            lines.add(new Line(text, start, end));
+            start = end;
+        }
+        return lines;
+    }
+
+    private static final class Document {
+        private List<Line> lines;
+    }
+
+    private static final class Line {
+        private final int charStart;
+        private final int chars;
+        private final long hash;
+        private final long bytes;
+        private final long codepoints;
+        private List<Finding> findings = Collections.emptyList();
+        // Whether the request this line was last inspected in had its findings truncated.
+        private boolean truncated = false;
+
+        private Line(final String text, final int start, final int end) {
+            long fnv = FNV_OFFSET;
+            for (int i = start; i < end; i++) {
+                fnv = (fnv ^ text.charAt(i)) * FNV_PRIME;
+            }
+            this.charStart = start;
+            this.chars = end - start;
+            this.hash = fnv;
+            this.bytes = FindingOffsets.utf8Length(text, start, end);
+            this.codepoints = text.codePointCount(start, end);
+        }
+
+        private void carryOver(final Line previous) {
+            this.findings = previous.findings;
+            this.truncated = previous.truncated;
+        }
+
+        private boolean sameAs(final Line other) {
+            return this.chars == other.chars && this.hash == other.hash;
+        }
+    }
+}
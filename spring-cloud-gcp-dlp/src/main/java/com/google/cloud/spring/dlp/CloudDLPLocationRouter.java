@@ -0,0 +1,436 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.dlp;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.privacy.dlp.v2.ByteContentItem.BytesType;
+import com.google.privacy.dlp.v2.InspectContentResponse;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.PatternMatchUtils;
+
+/**
+ * Routes calls across {@link CloudDLPTemplate}s bound to different locations.
+ * <p>
+ * Each call is sent to the healthy location with the lowest exponentially
+ * weighted moving average latency, scaled by its recent error rate and divided
+ * by the share of its per minute quota left, so load shifts away from a
+ * location well before its quota runs out. Failed calls count towards the
+ * latency, and locations without measurements yet are ranked at the mean
+ * latency of the measured ones. A location whose quota is used up, or which
+ * answered {@code RESOURCE_EXHAUSTED}, is skipped until the minute is over. A
+ * location is degraded while its error rate exceeds {@code maxErrorRate};
+ * degraded locations are only tried after all healthy ones, and are probed
+ * again once {@code recoveryInterval} has passed since their last failure.
+ * Calls failing with a retryable status fail over to the next candidate.
+ * <p>
+ * Residency rules restrict the candidate locations of a call, e.g. a rule
+ * {@code "eu" -> "europe-*"} keeps calls made with the {@code "eu"} residency on
+ * European locations. Calls made without a residency may use any location.
+ *
+ * @author Vinesh
+ *
+ * @since 2.0.7
+ */
+public class CloudDLPLocationRouter implements AutoCloseable {
+    private static final double DEFAULT_SMOOTHING = 0.2;
+    private static final double DEFAULT_MAX_ERROR_RATE = 0.5;
+    private static final Duration DEFAULT_RECOVERY_INTERVAL = Duration.ofSeconds(30);
+    private static final long QUOTA_WINDOW_NANOS = Duration.ofMinutes(1).toNanos();
+
+    private final List<Route> routes = new CopyOnWriteArrayList<>();
+    private final Map<String, List<String>> residencyRules = new ConcurrentHashMap<>();
+    private double smoothing = DEFAULT_SMOOTHING;
+    private double maxErrorRate = DEFAULT_MAX_ERROR_RATE;
+    private Duration recoveryInterval = DEFAULT_RECOVERY_INTERVAL;
+
+    public double getSmoothing() {
+        return this.smoothing;
+    }
+
+    /**
+     * Weight given to the newest sample in the latency and error rate averages.
+     *
+     * @param smoothing a value in {@code (0, 1]}
+     */
+    public void setSmoothing(final double smoothing) {
+        Assert.isTrue(smoothing > 0 && smoothing <= 1, "smoothing must be in (0, 1]");
+        this.smoothing = smoothing;
+    }
+
+    public double getMaxErrorRate() {
+        return this.maxErrorRate;
+    }
+
+    public void setMaxErrorRate(final double maxErrorRate) {
+        Assert.isTrue(maxErrorRate >= 0 && maxErrorRate <= 1, "maxErrorRate must be in [0, 1]");
+        this.maxErrorRate = maxErrorRate;
+    }
+
+    public Duration getRecoveryInterval() {
+        return this.recoveryInterval;
+    }
+
+    public void setRecoveryInterval(final Duration recoveryInterval) {
+        Assert.notNull(recoveryInterval, "recoveryInterval must not be null");
+        this.recoveryInterval = recoveryInterval;
+    }
+
+    /**
+     * Register a location.
+     *
+     * @param template       the template bound to the location
+     * @param quotaPerMinute requests allowed per minute, 0 for no client side
+     *                       limit
+     * @param resource       closed with the router, typically the template's
+     *                       client; may be {@code null}
+     */
+    public void addRoute(final CloudDLPTemplate template, final long quotaPerMinute, final AutoCloseable resource) {
+        Assert.notNull(template, "CloudDLPTemplate must not be null.");
+        Assert.isTrue(quotaPerMinute >= 0, "quotaPerMinute must be positive");
+        this.routes.add(new Route(template, quotaPerMinute, resource));
+    }
+
+    public void addRoute(final CloudDLPTemplate template) {
+        addRoute(template, 0, null);
+    }
+
+    /**
+     * Restrict calls made with the given residency to matching locations.
+     *
+     * @param residency        the residency name, e.g. "eu"
+     * @param locationPatterns location names, where {@code *} matches any
+     *                         characters, e.g. "europe-*"
+     */
+    public void addResidencyRule(final String residency, final String... locationPatterns) {
+        Assert.hasText(residency, "residency not provided");
+        Assert.notEmpty(locationPatterns, "locationPatterns not provided");
+        this.residencyRules.put(residency, Collections.unmodifiableList(Arrays.asList(locationPatterns)));
+    }
+
+    /**
+     * The locations a call with the given residency would be tried on, in order.
+     * Locations without quota left are not included.
+     *
+     * @param residency the residency of the content, or {@code null}
+     * @return the candidate location names
+     */
+    public List<String> candidates(final String residency) {
+        return orderedRoutes(residency).stream().map(route -> route.template.getLocation())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Run a call against the best location for the residency, failing over to the
+     * next candidate on retryable errors.
+     *
+     * @param residency the residency of the content, or {@code null}
+     * @param call      the call to make against the chosen template
+     * @return the result of the first successful call
+     * @throws CloudDLPException if no location is allowed for the residency, if
+     *                           all of them used up their quota or if all
+     *                           candidates failed
+     */
+    public <T> T execute(final String residency, final Function<CloudDLPTemplate, T> call) {
+        Assert.notNull(call, "call must not be null");
+
+        if (allowedRoutes(residency).isEmpty()) {
+            throw new CloudDLPException("No DLP location configured for residency " + residency + ".");
+        }
+
+        RuntimeException lastError = null;
+        for (final Route route : orderedRoutes(residency)) {
+            // Concurrent calls may have taken the last of the quota since ranking.
+            if (!route.tryAcquireQuota()) {
+                continue;
+            }
+            final long start = System.nanoTime();
+            try {
+                final T result = call.apply(route.template);
+                route.recordSuccess(System.nanoTime() - start, this.smoothing);
+                return result;
+            } catch (final RuntimeException e) {
+                final StatusCode.Code code = statusCode(e);
+                if (!isFailover(code)) {
+                    throw e;
+                }
+                route.recordFailure(System.nanoTime() - start, code == StatusCode.Code.RESOURCE_EXHAUSTED,
+                        this.smoothing);
+                lastError = e;
+            }
+        }
+
+        if (lastError == null) {
+            throw new CloudDLPException("All DLP locations used up their quota for residency " + residency + ".");
+        }
+        throw new CloudDLPException("All DLP locations failed for residency " + residency + ".", lastError);
+    }
+
+    public InspectContentResponse inspectText(final String residency, final String text,
+            final String... infoTypes) {
+        return execute(residency, template -> template.inspectText(text, null, Arrays.asList(infoTypes)));
+    }
+
+    public InspectContentResponse inspectContent(final String residency, final Resource resource,
+            final BytesType bytesType, final String inspectionTemplate, final List<String> infoTypes) {
+        return execute(residency,
+                template -> template.inspectContent(resource, bytesType, inspectionTemplate, infoTypes));
+    }
+
+    /**
+     * Snapshot of the measurements of every registered location.
+     */
+    public List<RouteStats> getRouteStats() {
+        final long now = System.nanoTime();
+        return this.routes.stream().map(route -> route.stats(now)).collect(Collectors.toList());
+    }
+
+    @Override
+    public void close() throws Exception {
+        Exception failure = null;
+        for (final Route route : this.routes) {
+            if (route.resource == null) {
+                continue;
+            }
+            try {
+                route.resource.close();
+            } catch (final Exception e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private List<Route> allowedRoutes(final String residency) {
+        final List<Route> allowed = new ArrayList<>(this.routes.size());
+        if (residency == null) {
+            allowed.addAll(this.routes);
+        } else {
+            final List<String> patterns = this.residencyRules.get(residency);
+            if (patterns == null) {
+                throw new CloudDLPException("Unknown DLP residency " + residency + ".");
+            }
+            for (final Route route : this.routes) {
+                if (PatternMatchUtils.simpleMatch(patterns.toArray(new String[0]), route.template.getLocation())) {
+                    allowed.add(route);
+                }
+            }
+        }
+        return allowed;
+    }
+
+    private List<Route> orderedRoutes(final String residency) {
+        final List<Route> allowed = allowedRoutes(residency);
+
+        // Rank on a snapshot, measurements keep changing while other calls complete.
+        final long now = System.nanoTime();
+        final long recoveryNanos = this.recoveryInterval.toNanos();
+        final List<Ranked> ranked = new ArrayList<>(allowed.size());
+        double measuredLatency = 0;
+        int measured = 0;
+        for (final Route route : allowed) {
+            final Ranked rank = route.rank(now, this.maxErrorRate, recoveryNanos);
+            if (rank.quotaShare <= 0) {
+                continue;
+            }
+            ranked.add(rank);
+            if (rank.latencyNanos > 0) {
+                measuredLatency += rank.latencyNanos;
+                measured++;
+            }
+        }
+
+        // Unmeasured locations rank as an average one rather than as the fastest.
+        final double prior = measured == 0 ? 0 : measuredLatency / measured;
+        ranked.sort(Comparator.<Ranked>comparingInt(rank -> rank.degraded ? 1 : 0)
+                .thenComparingDouble(rank -> rank.score(prior)));
+        return ranked.stream().map(rank -> rank.route).collect(Collectors.toList());
+    }
+
+    private static StatusCode.Code statusCode(final Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ApiException) {
+                return ((ApiException) cause).getStatusCode().getCode();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isFailover(final StatusCode.Code code) {
+        return code == StatusCode.Code.UNAVAILABLE || code == StatusCode.Code.DEADLINE_EXCEEDED
+                || code == StatusCode.Code.RESOURCE_EXHAUSTED || code == StatusCode.Code.INTERNAL
+                || code == StatusCode.Code.UNKNOWN || code == StatusCode.Code.ABORTED;
+    }
+
+    /**
+     * Measurements of a single location.
+     */
+    public static final class RouteStats {
+        private final String location;
+        private final Duration latency;
+        private final double errorRate;
+        private final long remainingQuota;
+
+        private RouteStats(final String location, final Duration latency, final double errorRate,
+                final long remainingQuota) {
+            this.location = location;
+            this.latency = latency;
+            this.errorRate = errorRate;
+            this.remainingQuota = remainingQuota;
+        }
+
+        public String getLocation() {
+            return this.location;
+        }
+
+        public Duration getLatency() {
+            return this.latency;
+        }
+
+        public double getErrorRate() {
+            return this.errorRate;
+        }
+
+        /**
+         * Requests left in the current minute, or -1 without a client side quota.
+         */
+        public long getRemainingQuota() {
+            return this.remainingQuota;
+        }
+    }
+
+    private static final class Ranked {
+        private final Route route;
+        private final boolean degraded;
+        private final double latencyNanos;
+        private final double errorRate;
+        // Share of the quota left in the current minute, 1 without a client side quota.
+        private final double quotaShare;
+
+        private Ranked(final Route route, final boolean degraded, final double latencyNanos,
+                final double errorRate, final double quotaShare) {
+            this.route = route;
+            this.degraded = degraded;
+            this.latencyNanos = latencyNanos;
+            this.errorRate = errorRate;
+            this.quotaShare = quotaShare;
+        }
+
+        private double score(final double priorLatencyNanos) {
+            return (this.latencyNanos > 0 ? this.latencyNanos : priorLatencyNanos) * (1 + this.errorRate)
+                    / this.quotaShare;
+        }
+    }
+
+    private static final class Route {
+        private final CloudDLPTemplate template;
+        private final long quotaPerMinute;
+        private final AutoCloseable resource;
+        private double latencyNanos = 0;
+        private double errorRate = 0;
+        private long lastFailure = 0;
+        private long windowStart = System.nanoTime();
+        private long used = 0;
+        private boolean exhausted = false;
+
+        private Route(final CloudDLPTemplate template, final long quotaPerMinute, final AutoCloseable resource) {
+            this.template = template;
+            this.quotaPerMinute = quotaPerMinute;
+            this.resource = resource;
+        }
+
+        private synchronized Ranked rank(final long now, final double maxErrorRate, final long recoveryNanos) {
+            rollWindow(now);
+            final boolean degraded = this.errorRate > maxErrorRate && now - this.lastFailure < recoveryNanos;
+            return new Ranked(this, degraded, this.latencyNanos, this.errorRate, quotaShare());
+        }
+
+        private double quotaShare() {
+            if (this.exhausted) {
+                return 0;
+            }
+            return this.quotaPerMinute > 0
+                    ? (double) Math.max(0, this.quotaPerMinute - this.used) / this.quotaPerMinute
+                    : 1;
+        }
+
+        /**
+         * Take one request of the current minute's quota.
+         *
+         * @return false if the quota is used up
+         */
+        private synchronized boolean tryAcquireQuota() {
+            rollWindow(System.nanoTime());
+            if (quotaShare() <= 0) {
+                return false;
+            }
+            this.used++;
+            return true;
+        }
+
+        private synchronized void recordSuccess(final long elapsedNanos, final double smoothing) {
+            recordLatency(elapsedNanos, smoothing);
+            this.errorRate = (1 - smoothing) * this.errorRate;
+        }
+
+        private synchronized void recordFailure(final long elapsedNanos, final boolean quotaExhausted,
+                final double smoothing) {
+            recordLatency(elapsedNanos, smoothing);
+            this.errorRate = smoothing + (1 - smoothing) * this.errorRate;
+            this.lastFailure = System.nanoTime();
+            this.exhausted |= quotaExhausted;
+        }
+
+        private void recordLatency(final long elapsedNanos, final double smoothing) {
+            // Keep measured routes distinguishable from unmeasured ones.
+            final double elapsed = Math.max(1, elapsedNanos);
+            this.latencyNanos = this.latencyNanos == 0 ? elapsed
+                    : smoothing * elapsed + (1 - smoothing) * this.latencyNanos;
+        }
+
+        private synchronized RouteStats stats(final long now) {
+            rollWindow(now);
+            final long remaining = this.quotaPerMinute > 0 ? Math.max(0, this.quotaPerMinute - this.used) : -1;
+            return new RouteStats(this.template.getLocation(), Duration.ofNanos((long) this.latencyNanos),
+                    this.errorRate, remaining);
+        }
+
+        private void rollWindow(final long now) {
+            if (now - this.windowStart >= QUOTA_WINDOW_NANOS) {
+                this.windowStart = now;
+                this.used = 0;
+                this.exhausted = false;
+            }
+        }
+    }
+}
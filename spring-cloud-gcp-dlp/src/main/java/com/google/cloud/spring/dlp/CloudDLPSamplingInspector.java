@@ -0,0 +1,418 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.dlp;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+import java.util.stream.Collectors;
+
+import com.google.privacy.dlp.v2.ByteContentItem.BytesType;
+import com.google.privacy.dlp.v2.InspectContentResponse;
+
+import org.springframework.util.Assert;
+
+/**
+ * Inspects a sample of high volume record streams while estimating how often
+ * records contain sensitive data.
+ * <p>
+ * Sampling is tracked per key, e.g. {@code source/field/tenant}. Each key has a
+ * base rate aiming at {@code targetInspections} per {@code window}, so spend
+ * stays flat as volume grows, and never falls below {@code minRate}. A record
+ * with findings switches its key to full inspection for the next
+ * {@code boostRecords} records, after which the rate decays back to the base
+ * rate by {@code decay} per record.
+ * <p>
+ * Each record is selected independently with a known probability, which gives
+ * uniform coverage of the stream and lets prevalence be estimated without bias
+ * by weighting every inspected record by the inverse of its selection
+ * probability (Horvitz-Thompson), together with a 95% confidence interval.
+ * <p>
+ * The state of at most {@code maxKeys} keys is kept, and keys without records
+ * for longer than {@code maxIdle} are dropped; the least recently used ones go
+ * first. A dropped key starts over with full inspection and a new estimate.
+ *
+ * @author Vinesh
+ *
+ * @since 2.0.7
+ */
+public class CloudDLPSamplingInspector {
+    private static final double Z_95 = 1.96;
+    private static final double ALPHA = 0.05;
+
+    private final CloudDLPTemplate template;
+    private final String inspectionTemplate;
+    private final List<String> infoTypes;
+    private final Map<String, KeyState> states = Collections.synchronizedMap(
+            new LinkedHashMap<String, KeyState>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, KeyState> eldest) {
+                    return size() > CloudDLPSamplingInspector.this.maxKeys;
+                }
+            });
+    private volatile int maxKeys = 10000;
+    private volatile Duration maxIdle = Duration.ofHours(1);
+    private double minRate = 0.01;
+    private long targetInspections = 1000;
+    private Duration window = Duration.ofMinutes(1);
+    private int boostRecords = 100;
+    private double decay = 0.95;
+    private DoubleSupplier random = () -> ThreadLocalRandom.current().nextDouble();
+
+    public CloudDLPSamplingInspector(final CloudDLPTemplate template, final String inspectionTemplate,
+            final List<String> infoTypes) {
+        Assert.notNull(template, "CloudDLPTemplate must not be null.");
+
+        this.template = template;
+        this.inspectionTemplate = inspectionTemplate;
+        this.infoTypes = infoTypes == null ? Collections.emptyList() : new ArrayList<>(infoTypes);
+    }
+
+    public CloudDLPSamplingInspector(final CloudDLPTemplate template) {
+        this(template, null, Collections.emptyList());
+    }
+
+    public double getMinRate() {
+        return this.minRate;
+    }
+
+    /**
+     * Lowest sampling rate of any key, whatever its volume.
+     *
+     * @param minRate a value in {@code (0, 1]}
+     */
+    public void setMinRate(final double minRate) {
+        Assert.isTrue(minRate > 0 && minRate <= 1, "minRate must be in (0, 1]");
+        this.minRate = minRate;
+    }
+
+    public long getTargetInspections() {
+        return this.targetInspections;
+    }
+
+    /**
+     * Inspections per key and window the base rate aims at.
+     */
+    public void setTargetInspections(final long targetInspections) {
+        Assert.isTrue(targetInspections > 0, "targetInspections must be positive");
+        this.targetInspections = targetInspections;
+    }
+
+    public Duration getWindow() {
+        return this.window;
+    }
+
+    public void setWindow(final Duration window) {
+        Assert.isTrue(window != null && !window.isZero() && !window.isNegative(), "window must be positive");
+        this.window = window;
+    }
+
+    public int getBoostRecords() {
+        return this.boostRecords;
+    }
+
+    /**
+     * Number of records of a key inspected in full after a record with findings.
+     */
+    public void setBoostRecords(final int boostRecords) {
+        Assert.isTrue(boostRecords >= 0, "boostRecords must be positive");
+        this.boostRecords = boostRecords;
+    }
+
+    public double getDecay() {
+        return this.decay;
+    }
+
+    /**
+     * Factor applied per record to a boosted rate on its way back to the base
+     * rate.
+     *
+     * @param decay a value in {@code [0, 1)}
+     */
+    public void setDecay(final double decay) {
+        Assert.isTrue(decay >= 0 && decay < 1, "decay must be in [0, 1)");
+        this.decay = decay;
+    }
+
+    public int getMaxKeys() {
+        return this.maxKeys;
+    }
+
+    /**
+     * Number of keys whose sampling state is kept.
+     */
+    public void setMaxKeys(final int maxKeys) {
+        Assert.isTrue(maxKeys > 0, "maxKeys must be positive");
+        this.maxKeys = maxKeys;
+    }
+
+    public Duration getMaxIdle() {
+        return this.maxIdle;
+    }
+
+    /**
+     * Time without records after which the sampling state of a key is dropped.
+     */
+    public void setMaxIdle(final Duration maxIdle) {
+        Assert.isTrue(maxIdle != null && !maxIdle.isZero() && !maxIdle.isNegative(), "maxIdle must be positive");
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Source of uniform random numbers in {@code [0, 1)} used for sampling.
+     */
+    public void setRandom(final DoubleSupplier random) {
+        Assert.notNull(random, "random must not be null");
+        this.random = random;
+    }
+
+    /**
+     * Inspect the record if it is sampled.
+     *
+     * @param key  the sampling key of the record, e.g. source/field/tenant
+     * @param text the record content
+     * @return the inspection response, or empty if the record was not sampled
+     * @throws CloudDLPException if a malformed response is received from the
+     *                           Cloud DLP APIs
+     */
+    public Optional<InspectContentResponse> inspectText(final String key, final String text) {
+        Assert.notNull(key, "key not provided");
+        Assert.notNull(text, "text not provided");
+
+        final long now = System.nanoTime();
+        evictIdle(now);
+        final KeyState state = this.states.computeIfAbsent(key, k -> new KeyState(now));
+        final double rate = state.next(now, this);
+        if (rate < 1 && this.random.getAsDouble() >= rate) {
+            return Optional.empty();
+        }
+
+        final InspectContentResponse response = this.template.inspectText(text, BytesType.TEXT_UTF8,
+                this.inspectionTemplate, this.infoTypes);
+        state.record(rate, response.getResult().getFindingsCount() > 0, this.boostRecords);
+        return Optional.of(response);
+    }
+
+    /**
+     * Sampling rate the next record of the key would be selected with.
+     */
+    public double getRate(final String key) {
+        final KeyState state = this.states.get(key);
+        return state == null ? 1 : state.peek(System.nanoTime(), this);
+    }
+
+    public PrevalenceEstimate getEstimate(final String key) {
+        final KeyState state = this.states.get(key);
+        return state == null ? new PrevalenceEstimate(key, 0, 0, 0, 0, 0, 1, 1) : state.estimate(key,
+                System.nanoTime(), this);
+    }
+
+    public Map<String, PrevalenceEstimate> getEstimates() {
+        final List<String> keys;
+        synchronized (this.states) {
+            keys = new ArrayList<>(this.states.keySet());
+        }
+        return keys.stream().collect(Collectors.toMap(key -> key, this::getEstimate));
+    }
+
+    public void reset(final String key) {
+        this.states.remove(key);
+    }
+
+    /**
+     * Drop the least recently used keys as long as they have been idle for
+     * longer than {@code maxIdle}.
+     */
+    private void evictIdle(final long now) {
+        final long maxIdleNanos = this.maxIdle.toNanos();
+        synchronized (this.states) {
+            final Iterator<KeyState> eldest = this.states.values().iterator();
+            while (eldest.hasNext() && eldest.next().idle(now, maxIdleNanos)) {
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Estimated share of a key's records containing findings.
+     */
+    public static final class PrevalenceEstimate {
+        private final String key;
+        private final long records;
+        private final long inspected;
+        private final long positives;
+        private final double prevalence;
+        private final double lower;
+        private final double upper;
+        private final double rate;
+
+        private PrevalenceEstimate(final String key, final long records, final long inspected, final long positives,
+                final double prevalence, final double lower, final double upper, final double rate) {
+            this.key = key;
+            this.records = records;
+            this.inspected = inspected;
+            this.positives = positives;
+            this.prevalence = prevalence;
+            this.lower = lower;
+            this.upper = upper;
+            this.rate = rate;
+        }
+
+        public String getKey() {
+            return this.key;
+        }
+
+        public long getRecords() {
+            return this.records;
+        }
+
+        public long getInspected() {
+            return this.inspected;
+        }
+
+        public long getPositives() {
+            return this.positives;
+        }
+
+        public double getPrevalence() {
+            return this.prevalence;
+        }
+
+        /**
+         * Lower bound of the 95% confidence interval.
+         */
+        public double getLower() {
+            return this.lower;
+        }
+
+        /**
+         * Upper bound of the 95% confidence interval.
+         */
+        public double getUpper() {
+            return this.upper;
+        }
+
+        public double getRate() {
+            return this.rate;
+        }
+    }
+
+    private static final class KeyState {
+        private long lastUsed;
+        private long windowStart = -1;
+        private long windowRecords = 0;
+        private long previousWindowRecords = 0;
+        private int boostRemaining = 0;
+        private double boostedRate = 0;
+        private long records = 0;
+        private long inspected = 0;
+        private long positives = 0;
+        private double weightedPositives = 0;
+        private double variance = 0;
+
+        private KeyState(final long now) {
+            this.lastUsed = now;
+        }
+
+        private synchronized boolean idle(final long now, final long maxIdleNanos) {
+            return now - this.lastUsed > maxIdleNanos;
+        }
+
+        private synchronized double next(final long now, final CloudDLPSamplingInspector settings) {
+            if (now - this.lastUsed > 0) {
+                this.lastUsed = now;
+            }
+            roll(now, settings);
+            this.windowRecords++;
+            this.records++;
+
+            final double rate = rate(settings);
+            if (this.boostRemaining > 0) {
+                this.boostRemaining--;
+            } else {
+                this.boostedRate *= settings.decay;
+            }
+            return rate;
+        }
+
+        private synchronized double peek(final long now, final CloudDLPSamplingInspector settings) {
+            roll(now, settings);
+            return rate(settings);
+        }
+
+        private synchronized void record(final double rate, final boolean positive, final int boostRecords) {
+            this.inspected++;
+            if (!positive) {
+                return;
+            }
+            this.positives++;
+            this.weightedPositives += 1 / rate;
+            this.variance += (1 - rate) / (rate * rate);
+            this.boostRemaining = boostRecords;
+            this.boostedRate = 1;
+        }
+
+        private synchronized PrevalenceEstimate estimate(final String key, final long now,
+                final CloudDLPSamplingInspector settings) {
+            roll(now, settings);
+            if (this.records == 0) {
+                return new PrevalenceEstimate(key, 0, 0, 0, 0, 0, 1, rate(settings));
+            }
+
+            final double prevalence = Math.min(1, this.weightedPositives / this.records);
+            final double lower;
+            final double upper;
+            if (this.positives == 0) {
+                // No variance to work with: use the exact two-sided (Clopper-Pearson) bound for zero successes.
+                lower = 0;
+                upper = this.inspected == 0 ? 1 : 1 - Math.pow(ALPHA / 2, 1.0 / this.inspected);
+            } else {
+                final double margin = Z_95 * Math.sqrt(this.variance) / this.records;
+                lower = Math.max(0, prevalence - margin);
+                upper = Math.min(1, prevalence + margin);
+            }
+            return new PrevalenceEstimate(key, this.records, this.inspected, this.positives, prevalence, lower, upper,
+                    rate(settings));
+        }
+
+        private double rate(final CloudDLPSamplingInspector settings) {
+            if (this.boostRemaining > 0) {
+                return 1;
+            }
+            final long volume = Math.max(1, Math.max(this.previousWindowRecords, this.windowRecords));
+            final double base = Math.max(settings.minRate, Math.min(1, (double) settings.targetInspections / volume));
+            return Math.max(base, Math.min(1, this.boostedRate));
+        }
+
+        private void roll(final long now, final CloudDLPSamplingInspector settings) {
+            if (this.windowStart < 0) {
+                this.windowStart = now;
+            } else if (now - this.windowStart >= settings.window.toNanos()) {
+                this.previousWindowRecords = this.windowRecords;
+                this.windowRecords = 0;
+                this.windowStart = now;
+            }
+        }
+    }
+}
@@ -17,33 +17,68 @@
 package com.google.cloud.spring.dlp;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.google.cloud.dlp.v2.DlpServiceClient;
 import com.google.cloud.spring.core.GcpProjectIdProvider;
+import com.google.privacy.dlp.v2.Action;
 import com.google.privacy.dlp.v2.ByteContentItem;
 import com.google.privacy.dlp.v2.ByteContentItem.BytesType;
+import com.google.privacy.dlp.v2.CloudStorageOptions;
 import com.google.privacy.dlp.v2.ContentItem;
+import com.google.privacy.dlp.v2.CreateDlpJobRequest;
+import com.google.privacy.dlp.v2.DlpJob;
+import com.google.privacy.dlp.v2.FieldId;
+import com.google.privacy.dlp.v2.Finding;
 import com.google.privacy.dlp.v2.InfoType;
 import com.google.privacy.dlp.v2.InfoTypeDescription;
 import com.google.privacy.dlp.v2.InspectConfig;
 import com.google.privacy.dlp.v2.InspectContentRequest;
 import com.google.privacy.dlp.v2.InspectContentResponse;
+import com.google.privacy.dlp.v2.InspectJobConfig;
+import com.google.privacy.dlp.v2.InspectResult;
 import com.google.privacy.dlp.v2.Likelihood;
 import com.google.privacy.dlp.v2.ListInfoTypesRequest;
 import com.google.privacy.dlp.v2.ListInfoTypesResponse;
 import com.google.privacy.dlp.v2.LocationName;
+import com.google.privacy.dlp.v2.Range;
 import com.google.privacy.dlp.v2.RedactImageRequest;
 import com.google.privacy.dlp.v2.RedactImageRequest.ImageRedactionConfig;
 import com.google.privacy.dlp.v2.RedactImageResponse;
+import com.google.privacy.dlp.v2.StorageConfig;
+import com.google.privacy.dlp.v2.Table;
+import com.google.privacy.dlp.v2.Value;
 import com.google.protobuf.ByteString;
 
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
@@ -57,13 +92,31 @@ import org.springframework.util.StringUtils;
  * @since 2.0.4
  */
 public class CloudDLPTemplate {
+    private static final String BATCH_COLUMN = "content";
+    private static final String STORAGE_SCHEME = "gs";
+    private static final int MAX_TABLE_ROWS = 1000;
+    private static final int PAGE_OVERLAP = 1000;
+    // Upper bound of the protobuf framing of a one cell table row.
+    private static final int TABLE_CELL_OVERHEAD = 16;
+    /*
+     * Inline content requests are limited to 0.5 MB: See:
+     * https://cloud.google.com/dlp/limits
+     */
+    public static final long DEFAULT_INLINE_CONTENT_LIMIT = 500L * 1000L;
     private final GcpProjectIdProvider projectProvider;
-    private final DlpServiceClient dlpClient;
+    private final Supplier<DlpServiceClient> dlpClientSupplier;
+    private volatile DlpServiceClient dlpClient;
     private final String location;
     private int maxFindings = 0;
     private boolean includeQuote = true;
     private boolean includeFindings = true;
     private String inspectionTemplate = null;
+    private CloudDLPBatchingDispatcher batchingDispatcher = null;
+    private long inlineContentLimit = DEFAULT_INLINE_CONTENT_LIMIT;
+    private Duration jobPollInitialDelay = Duration.ofSeconds(1);
+    private Duration jobPollMaxDelay = Duration.ofSeconds(30);
+    private ScheduledExecutorService jobPollExecutor = null;
+    private List<Action> jobActions = Collections.emptyList();
     private final ByteContentUtil util = new ByteContentUtil();
     /*
      * The minimum likelihood required before returning a match: See:
@@ -77,6 +130,22 @@ public class CloudDLPTemplate {
         Assert.notNull(dlpClient, "DlpServiceClient must not be null.");
 
         this.dlpClient = dlpClient;
+        this.dlpClientSupplier = () -> dlpClient;
+        this.projectProvider = projectProvider;
+        this.location = location;
+    }
+
+    /**
+     * Create a template whose client is only obtained from the supplier on first
+     * use, so that credential resolution and channel setup stay off the startup
+     * path.
+     */
+    public CloudDLPTemplate(final GcpProjectIdProvider projectProvider, final String location,
+            final Supplier<DlpServiceClient> dlpClientSupplier) {
+        Assert.notNull(projectProvider, "GcpProjectIdProvider must not be null.");
+        Assert.notNull(dlpClientSupplier, "DlpServiceClient supplier must not be null.");
+
+        this.dlpClientSupplier = dlpClientSupplier;
         this.projectProvider = projectProvider;
         this.location = location;
     }
@@ -85,6 +154,10 @@ public class CloudDLPTemplate {
         this(projectProvider, "global", dlpClient);
     }
 
+    public String getLocation() {
+        return this.location;
+    }
+
     public int getMaxfindings() {
         return this.maxFindings;
     }
@@ -128,6 +201,92 @@ public class CloudDLPTemplate {
         this.inspectionTemplate = inspectionTemplate;
     }
 
+    public CloudDLPBatchingDispatcher getBatchingDispatcher() {
+        return this.batchingDispatcher;
+    }
+
+    /**
+     * Route single-item {@code TEXT_UTF8} inspections through the given
+     * dispatcher, which packs concurrent calls sharing the same configuration
+     * into a single table request. Pass {@code null} to disable batching.
+     *
+     * @param batchingDispatcher the dispatcher to use, or {@code null}
+     */
+    public void setBatchingDispatcher(final CloudDLPBatchingDispatcher batchingDispatcher) {
+        this.batchingDispatcher = batchingDispatcher;
+    }
+
+    public long getInlineContentLimit() {
+        return this.inlineContentLimit;
+    }
+
+    /**
+     * Size in bytes above which {@link #inspectContent(Resource, BytesType, String, List)}
+     * stops sending the content inline. Cloud Storage objects are then inspected
+     * through a DLP job and other text content page by page; other content has
+     * to be uploaded to Cloud Storage first.
+     *
+     * @param inlineContentLimit the limit in bytes, 0 to always send inline
+     */
+    public void setInlineContentLimit(final long inlineContentLimit) {
+        if (inlineContentLimit < 0) {
+            throw new IllegalArgumentException("inlineContentLimit must be positive");
+        }
+        this.inlineContentLimit = inlineContentLimit;
+    }
+
+    public Duration getJobPollInitialDelay() {
+        return this.jobPollInitialDelay;
+    }
+
+    public void setJobPollInitialDelay(final Duration jobPollInitialDelay) {
+        Assert.notNull(jobPollInitialDelay, "jobPollInitialDelay must not be null");
+        // The delay doubles between polls, so it has to start above zero.
+        Assert.isTrue(!jobPollInitialDelay.isNegative() && !jobPollInitialDelay.isZero(),
+                "jobPollInitialDelay must be positive");
+        this.jobPollInitialDelay = jobPollInitialDelay;
+    }
+
+    public Duration getJobPollMaxDelay() {
+        return this.jobPollMaxDelay;
+    }
+
+    public void setJobPollMaxDelay(final Duration jobPollMaxDelay) {
+        Assert.notNull(jobPollMaxDelay, "jobPollMaxDelay must not be null");
+        Assert.isTrue(!jobPollMaxDelay.isNegative() && !jobPollMaxDelay.isZero(), "jobPollMaxDelay must be positive");
+        this.jobPollMaxDelay = jobPollMaxDelay;
+    }
+
+    public ScheduledExecutorService getJobPollExecutor() {
+        return this.jobPollExecutor;
+    }
+
+    /**
+     * Executor running the blocking job status requests of {@link #awaitJob}.
+     * Defaults to a single daemon thread shared by all templates.
+     *
+     * @param jobPollExecutor the executor to use, or {@code null} for the default
+     */
+    public void setJobPollExecutor(final ScheduledExecutorService jobPollExecutor) {
+        this.jobPollExecutor = jobPollExecutor;
+    }
+
+    public List<Action> getJobActions() {
+        return this.jobActions;
+    }
+
+    /**
+     * Actions added to every inspection job, e.g. saving the findings to
+     * BigQuery or publishing a Pub/Sub notification once the job is done. A job
+     * without actions only reports statistics.
+     *
+     * @param jobActions the actions to add, or {@code null} for none
+     */
+    public void setJobActions(final List<Action> jobActions) {
+        this.jobActions = jobActions == null ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(jobActions));
+    }
+
     /**
      * Inspect an image and redact based on defaul info types.
      * 
@@ -169,7 +328,7 @@ public class CloudDLPTemplate {
             request.setInspectConfig(inspectConfig);
 
             // Use the client to send the API request.
-            return dlpClient.redactImage(request.build());
+            return client().redactImage(request.build());
         } catch (final Exception e) {
             throw new CloudDLPException("Failed to receive valid response from DLP APIs; empty response received.", e);
         }
@@ -204,7 +363,8 @@ public class CloudDLPTemplate {
 
         final ByteContentItem byteItem = util.createByteContent(text, bytesType);
         try {
-            return doInpsect(byteItem, inspectionTemplate, infoTypes);
+            return doInpsect(ContentItem.newBuilder().setByteItem(byteItem).build(), inspectionTemplate, infoTypes,
+                    getMaxfindings());
         } catch (final Exception e) {
             throw new CloudDLPException("Failed to receive valid response from DLP APIs; no response received.", e);
         }
@@ -213,13 +373,21 @@ public class CloudDLPTemplate {
     /**
      * Inspect an image and redact based on defaul info types.
      * 
+     * <p>
+     * Content above the {@link #getInlineContentLimit() inline content limit} is
+     * not sent inline. A Cloud Storage object is inspected through a DLP job,
+     * which reports its findings to the {@link #getJobActions() job actions}
+     * only; the response then holds no findings and is marked truncated. Other
+     * {@code TEXT_UTF8} content is inspected page by page.
+     *
      * @param resource  the resource one wishes to analyze. The Cloud DLP APIs
      *                  support file formats described here:
      *                  https://cloud.google.com/dlp/docs/supported-file-types
      * @param bytesType The content type to be inspected @see BytesType
      * @return the inspect response.
-     * @throws CloudDLPException if the image could not be read or if a malformed
-     *                           response is received from the Cloud DLP APIs
+     * @throws CloudDLPException if the image could not be read, if a malformed
+     *                           response is received from the Cloud DLP APIs or
+     *                           if the inspection job failed
      */
     public InspectContentResponse inspectContent(final Resource resource, final BytesType bytesType,
             final String inspectionTemplate, final List<String> infoTypes) {
@@ -227,32 +395,445 @@ public class CloudDLPTemplate {
         Assert.notNull(bytesType, "BytesType not provided");
         Assert.isTrue(BytesType.BYTES_TYPE_UNSPECIFIED != bytesType, "Invalid bytesType not supported type.");
 
+        if (exceedsInlineLimit(resource)) {
+            if (isStorageResource(resource)) {
+                return inspectStorageObject(resource, inspectionTemplate, infoTypes);
+            }
+            if (bytesType != BytesType.TEXT_UTF8) {
+                throw new CloudDLPException("Content of " + resource.getDescription()
+                        + " exceeds the inline content limit and only TEXT_UTF8 content is paged.");
+            }
+            return inspectPages(resource, inspectionTemplate, infoTypes, getMaxfindings(), isIncludeQuote());
+        }
+
         final ByteContentItem byteItem = util.createByteContent(resource, bytesType);
         try {
-            return doInpsect(byteItem, inspectionTemplate, infoTypes);
+            return doInpsect(ContentItem.newBuilder().setByteItem(byteItem).build(), inspectionTemplate, infoTypes,
+                    getMaxfindings());
         } catch (final Exception e) {
             throw new CloudDLPException("Failed to receive valid response from DLP APIs; no response received.", e);
         }
     }
 
-    private InspectContentResponse doInpsect(final ByteContentItem byteItem, final String inspectionTemplate,
+    /**
+     * Inspect a large text resource page by page. Each page is inspected inline
+     * once the previous page's findings have been consumed, so neither the
+     * content nor the findings are held in memory all at once. Findings are
+     * re-based onto the whole resource. Pages are cut at line or word boundaries
+     * where possible and each page starts with a tail of the previous one, so
+     * findings straddling a cut are found; findings reported by both pages are
+     * only returned once. Finding limits apply to each page.
+     * <p>
+     * Only {@code TEXT_UTF8} is supported: pages of CSV or TSV content would lose
+     * their header row and report table locations relative to the page.
+     *
+     * @param resource  the text resource one wishes to analyze, read as UTF-8
+     * @param bytesType The text content type to be inspected @see BytesType
+     * @return a lazily populated stream of findings which must be closed
+     * @throws CloudDLPException if the resource could not be read or if a
+     *                           malformed response is received from the Cloud
+     *                           DLP APIs
+     */
+    public Stream<Finding> streamFindings(final Resource resource, final BytesType bytesType,
+            final String inspectionTemplate, final List<String> infoTypes) {
+        Assert.notNull(resource, "Resource not provided");
+        Assert.isTrue(bytesType == BytesType.TEXT_UTF8, "Invalid bytesType; only TEXT_UTF8 can be paged.");
+
+        final PagedFindings pages = openPages(resource, inspectionTemplate, infoTypes, getMaxfindings(),
+                isIncludeQuote());
+        return StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(pages::close);
+    }
+
+    /**
+     * Collect the findings of all pages of a large text resource, enforcing
+     * {@code maxFindings} across pages. The result is truncated if any page was,
+     * or if the limit was reached before the end of the resource.
+     */
+    private InspectContentResponse inspectPages(final Resource resource, final String inspectionTemplate,
+            final List<String> infoTypes, final int max, final boolean includeQuote) {
+        final PagedFindings pages = openPages(resource, inspectionTemplate, infoTypes, max, includeQuote);
+        try {
+            final InspectResult.Builder result = InspectResult.newBuilder();
+            while ((max == 0 || result.getFindingsCount() < max) && pages.hasNext()) {
+                result.addFindings(pages.next());
+            }
+            final boolean limited = max > 0 && result.getFindingsCount() >= max && pages.hasPending();
+            return InspectContentResponse.newBuilder()
+                    .setResult(result.setFindingsTruncated(pages.isTruncated() || limited)).build();
+        } finally {
+            pages.close();
+        }
+    }
+
+    /**
+     * Inspect a Cloud Storage object through a DLP job and wait for it to
+     * finish.
+     */
+    private InspectContentResponse inspectStorageObject(final Resource resource, final String inspectionTemplate,
             final List<String> infoTypes) {
-        // The maximum number of findings to report (0 = server maximum)
-        final InspectConfig.FindingLimits limits = InspectConfig.FindingLimits.newBuilder()
-                .setMaxFindingsPerItem(getMaxfindings()).setMaxFindingsPerRequest(getMaxfindings()).build();
+        final String storageUrl;
+        try {
+            storageUrl = resource.getURI().toString();
+        } catch (final IOException ex) {
+            throw new CloudDLPException("Failed to resolve the url of " + resource.getDescription() + ".", ex);
+        }
 
-        final InspectConfig.Builder inspectionConfig = InspectConfig.newBuilder().setIncludeQuote(isIncludeQuote())
-                .setLimits(limits).setMinLikelihood(getMinLikelihood());
+        try {
+            inspectStorage(storageUrl, inspectionTemplate, infoTypes).join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof CloudDLPException) {
+                throw (CloudDLPException) e.getCause();
+            }
+            throw new CloudDLPException("Failed to inspect " + storageUrl + " through a DLP job.", e);
+        }
+        // The findings went to the job actions; none are returned inline.
+        return InspectContentResponse.newBuilder().setResult(InspectResult.newBuilder().setFindingsTruncated(true))
+                .build();
+    }
 
-        final List<InfoType> infoTypeList = toInfoTypes(infoTypes);
-        if (!infoTypeList.isEmpty()) {
-            inspectionConfig.addAllInfoTypes(infoTypeList);
+    private PagedFindings openPages(final Resource resource, final String inspectionTemplate,
+            final List<String> infoTypes, final int maxFindings, final boolean includeQuote) {
+        try {
+            return new PagedFindings(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8),
+                    inspectionTemplate, infoTypes, maxFindings, includeQuote);
+        } catch (final IOException ex) {
+            throw new CloudDLPException("Failed to read content bytes from provided resource.", ex);
+        }
+    }
+
+    /**
+     * Submit a DLP job inspecting objects in Cloud Storage, running the
+     * {@link #getJobActions() job actions} followed by the given ones.
+     *
+     * @param storageUrl the {@code gs://} url of the objects to inspect; may
+     *                   contain a wildcard
+     * @param actions    actions to run once the job is done, e.g. saving the
+     *                   findings to BigQuery; may be empty
+     * @return the created job
+     * @throws CloudDLPException if the job could not be created
+     */
+    public DlpJob createInspectJob(final String storageUrl, final String inspectionTemplate,
+            final List<String> infoTypes, final List<Action> actions) {
+        Assert.hasText(storageUrl, "storageUrl not provided");
+        Assert.notNull(actions, "actions must not be null");
+
+        final InspectJobConfig.Builder jobConfig = InspectJobConfig.newBuilder()
+                .setStorageConfig(StorageConfig.newBuilder().setCloudStorageOptions(CloudStorageOptions.newBuilder()
+                        .setFileSet(CloudStorageOptions.FileSet.newBuilder().setUrl(storageUrl))))
+                .setInspectConfig(createInspectConfig(infoTypes, getMaxfindings(), isIncludeQuote()))
+                .addAllActions(getJobActions()).addAllActions(actions);
+
+        if (StringUtils.hasText(getInspectionTemplate())) {
+            jobConfig.setInspectTemplateName(getInspectionTemplate());
+        }
+
+        // override if passed in
+        if (StringUtils.hasText(inspectionTemplate)) {
+            jobConfig.setInspectTemplateName(inspectionTemplate);
+        }
+
+        final CreateDlpJobRequest request = CreateDlpJobRequest.newBuilder()
+                .setParent(LocationName.of(projectProvider.getProjectId(), this.location).toString())
+                .setInspectJob(jobConfig).build();
+        try {
+            return client().createDlpJob(request);
+        } catch (final Exception e) {
+            throw new CloudDLPException("Failed to create DLP inspect job for " + storageUrl + ".", e);
+        }
+    }
+
+    public DlpJob createInspectJob(final String storageUrl, final String inspectionTemplate,
+            final List<String> infoTypes) {
+        return createInspectJob(storageUrl, inspectionTemplate, infoTypes, Collections.emptyList());
+    }
+
+    /**
+     * Inspect objects in Cloud Storage through a DLP job and poll it until it
+     * finishes. The returned future completes with the finished job and can be
+     * used to register a completion callback. It carries only statistics: the
+     * {@code InspectDetails} of the job count findings per info type, while the
+     * findings themselves only reach the job's actions, e.g. a
+     * {@code SaveFindings} action writing them to BigQuery. Cancelling the
+     * future stops polling but does not cancel the job.
+     *
+     * @param storageUrl the {@code gs://} url of the objects to inspect
+     * @param actions    actions to run once the job is done, in addition to the
+     *                   {@link #getJobActions() job actions}
+     * @return a future of the finished job
+     */
+    public CompletableFuture<DlpJob> inspectStorage(final String storageUrl, final String inspectionTemplate,
+            final List<String> infoTypes, final List<Action> actions) {
+        return awaitJob(createInspectJob(storageUrl, inspectionTemplate, infoTypes, actions).getName());
+    }
+
+    /**
+     * Inspect objects in Cloud Storage through a DLP job running the
+     * {@link #getJobActions() job actions}.
+     *
+     * @see #inspectStorage(String, String, List, List)
+     */
+    public CompletableFuture<DlpJob> inspectStorage(final String storageUrl, final String inspectionTemplate,
+            final List<String> infoTypes) {
+        return inspectStorage(storageUrl, inspectionTemplate, infoTypes, Collections.emptyList());
+    }
+
+    public CompletableFuture<DlpJob> inspectStorage(final String storageUrl, final String... infoTypes) {
+        return inspectStorage(storageUrl, null, Arrays.asList(infoTypes));
+    }
+
+    /**
+     * Poll a DLP job with exponential backoff, starting at
+     * {@link #getJobPollInitialDelay()} and doubling up to
+     * {@link #getJobPollMaxDelay()}, until it is done, failed or canceled.
+     *
+     * @param jobName the full resource name of the job
+     * @return a future of the finished job, completed exceptionally with a
+     *         {@link CloudDLPException} if the job failed or was canceled
+     */
+    public CompletableFuture<DlpJob> awaitJob(final String jobName) {
+        Assert.hasText(jobName, "jobName not provided");
+
+        final CompletableFuture<DlpJob> result = new CompletableFuture<>();
+        pollJob(jobName, this.jobPollInitialDelay.toMillis(), result);
+        return result;
+    }
+
+    private void pollJob(final String jobName, final long delayMillis, final CompletableFuture<DlpJob> result) {
+        final ScheduledExecutorService executor = this.jobPollExecutor != null ? this.jobPollExecutor
+                : JobPollScheduler.EXECUTOR;
+        try {
+            executor.schedule(() -> pollJobOnce(jobName, delayMillis, result), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException e) {
+            result.completeExceptionally(new CloudDLPException("Failed to poll DLP job " + jobName + ".", e));
         }
+    }
+
+    private void pollJobOnce(final String jobName, final long delayMillis, final CompletableFuture<DlpJob> result) {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            final DlpJob job = client().getDlpJob(jobName);
+            switch (job.getState()) {
+            case DONE:
+                result.complete(job);
+                break;
+            case FAILED:
+            case CANCELED:
+                result.completeExceptionally(new CloudDLPException(
+                        "DLP job " + jobName + " finished in state " + job.getState() + ": "
+                                + job.getErrorsList()));
+                break;
+            default:
+                pollJob(jobName, Math.min(delayMillis * 2, this.jobPollMaxDelay.toMillis()), result);
+            }
+        } catch (final Exception e) {
+            result.completeExceptionally(new CloudDLPException("Failed to poll DLP job " + jobName + ".", e));
+        }
+    }
+
+    private boolean exceedsInlineLimit(final Resource resource) {
+        // The length of a plain input stream can only be known by consuming it.
+        if (this.inlineContentLimit == 0 || resource instanceof InputStreamResource) {
+            return false;
+        }
+
+        try {
+            return resource.contentLength() > this.inlineContentLimit;
+        } catch (final IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether the resource is a Cloud Storage object, which can be inspected
+     * through {@link #inspectStorage} instead of inline.
+     */
+    private static boolean isStorageResource(final Resource resource) {
+        try {
+            final URI uri = resource.getURI();
+            return STORAGE_SCHEME.equals(uri.getScheme());
+        } catch (final IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Inspect a text and return its findings in compact form. Quotes are not
+     * requested from the service; {@link CompactFindings#getQuote(int)} slices
+     * them from the text instead.
+     *
+     * @param text the text one wishes to analyze
+     * @return the compact findings
+     * @throws CloudDLPException if a malformed response is received from the
+     *                           Cloud DLP APIs
+     */
+    public CompactFindings inspectTextCompact(final String text, final String inspectionTemplate,
+            final List<String> infoTypes) {
+        Assert.notNull(text, "text not provided");
+
+        final ByteContentItem byteItem = util.createByteContent(text, BytesType.TEXT_UTF8);
+        try {
+            return CompactFindings.from(doInpsect(ContentItem.newBuilder().setByteItem(byteItem).build(),
+                    inspectionTemplate, infoTypes, getMaxfindings(), false), text);
+        } catch (final Exception e) {
+            throw new CloudDLPException("Failed to receive valid response from DLP APIs; no response received.", e);
+        }
+    }
+
+    public CompactFindings inspectTextCompact(final String text, final String... infoTypes) {
+        return inspectTextCompact(text, null, Arrays.asList(infoTypes));
+    }
+
+    /**
+     * Inspect many texts with as few requests as possible. Texts are packed into
+     * the rows of table requests bounded by the inline content limit, less a
+     * margin for the table encoding, and the findings of all requests are
+     * returned in compact form, each tagged with the index of its text. A text
+     * too large for a table request is inspected on its own, page by page if it
+     * exceeds the inline limit.
+     *
+     * @param texts the texts one wishes to analyze
+     * @return the compact findings of all texts
+     * @throws CloudDLPException if a malformed response is received from the
+     *                           Cloud DLP APIs
+     */
+    public CompactFindings inspectTexts(final List<String> texts, final String inspectionTemplate,
+            final List<String> infoTypes) {
+        Assert.notNull(texts, "texts not provided");
+
+        final long limit = this.inlineContentLimit == 0 ? DEFAULT_INLINE_CONTENT_LIMIT : this.inlineContentLimit;
+        // Keep a tenth of the limit for the request envelope and table header.
+        final long budget = limit - limit / 10;
+        final CompactFindings.Builder findings = new CompactFindings.Builder();
+        int first = 0;
+        long bytes = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            final long size = FindingOffsets.utf8Length(texts.get(i));
+            final long cost = size + TABLE_CELL_OVERHEAD;
+            final boolean alone = cost > budget;
+            if (i > first && (alone || bytes + cost > budget || i - first >= MAX_TABLE_ROWS)) {
+                findings.add(inspectTable(texts.subList(first, i), inspectionTemplate, infoTypes, false), first,
+                        true);
+                first = i;
+                bytes = 0;
+            }
+            if (alone) {
+                findings.add(inspectAlone(texts.get(i), size > limit, inspectionTemplate, infoTypes), i, false);
+                first = i + 1;
+                continue;
+            }
+            bytes += cost;
+        }
+        if (first < texts.size()) {
+            findings.add(inspectTable(texts.subList(first, texts.size()), inspectionTemplate, infoTypes, false),
+                    first, true);
+        }
+
+        return findings.build(texts.toArray(new String[0]));
+    }
+
+    public CompactFindings inspectTexts(final List<String> texts, final String... infoTypes) {
+        return inspectTexts(texts, null, Arrays.asList(infoTypes));
+    }
+
+    private InspectContentResponse inspectAlone(final String text, final boolean paged,
+            final String inspectionTemplate, final List<String> infoTypes) {
+        // Same settings as the table requests: no quotes, no limit.
+        if (paged) {
+            return inspectPages(new ByteArrayResource(text.getBytes(StandardCharsets.UTF_8)), inspectionTemplate,
+                    infoTypes, 0, false);
+        }
+
+        final ByteContentItem byteItem = util.createByteContent(text, BytesType.TEXT_UTF8);
+        try {
+            return doInpsect(ContentItem.newBuilder().setByteItem(byteItem).build(), inspectionTemplate, infoTypes, 0,
+                    false);
+        } catch (final Exception e) {
+            throw new CloudDLPException("Failed to receive valid response from DLP APIs; no response received.", e);
+        }
+    }
+
+    /**
+     * Inspect a text and redact its findings locally, without a de-identify
+     * request. Findings limits are lifted for the inspection so that no sensitive
+     * value is left in place.
+     *
+     * @param text      the text one wishes to redact
+     * @param redaction how findings are replaced @see TextRedaction
+     * @return the redacted text
+     * @throws CloudDLPException if a malformed response is received from the
+     *                           Cloud DLP APIs, or if the findings were truncated
+     */
+    public String redactText(final String text, final TextRedaction redaction, final String inspectionTemplate,
+            final List<String> infoTypes) {
+        Assert.notNull(text, "text not provided");
+        Assert.notNull(redaction, "TextRedaction not provided");
+
+        final ByteContentItem byteItem = util.createByteContent(text, BytesType.TEXT_UTF8);
+        final InspectContentResponse response;
+        try {
+            response = doInpsect(ContentItem.newBuilder().setByteItem(byteItem).build(), inspectionTemplate,
+                    infoTypes, 0, false);
+        } catch (final Exception e) {
+            throw new CloudDLPException("Failed to receive valid response from DLP APIs; no response received.", e);
+        }
+
+        if (response.getResult().getFindingsTruncated()) {
+            throw new CloudDLPException("Findings were truncated; text cannot be fully redacted.");
+        }
+        return redaction.apply(text, response.getResult().getFindingsList());
+    }
+
+    public String redactText(final String text, final String... infoTypes) {
+        return redactText(text, TextRedaction.infoTypeName(), null, Arrays.asList(infoTypes));
+    }
+
+    public String maskText(final String text, final char maskingCharacter, final String... infoTypes) {
+        return redactText(text, TextRedaction.characterMask(maskingCharacter), null, Arrays.asList(infoTypes));
+    }
+
+    /**
+     * Inspect several texts in a single request by packing them into the rows of
+     * a one column table. Findings carry the originating row in their
+     * {@code TableLocation}; finding limits are left to the server maximum since
+     * they would otherwise apply to the whole batch.
+     */
+    InspectContentResponse inspectTable(final List<String> rows, final String inspectionTemplate,
+            final List<String> infoTypes) {
+        return inspectTable(rows, inspectionTemplate, infoTypes, isIncludeQuote());
+    }
+
+    private InspectContentResponse inspectTable(final List<String> rows, final String inspectionTemplate,
+            final List<String> infoTypes, final boolean includeQuote) {
+        final Table.Builder table = Table.newBuilder().addHeaders(FieldId.newBuilder().setName(BATCH_COLUMN));
+        for (final String row : rows) {
+            table.addRows(Table.Row.newBuilder().addValues(Value.newBuilder().setStringValue(row)));
+        }
+
+        try {
+            return doInpsect(ContentItem.newBuilder().setTable(table).build(), inspectionTemplate, infoTypes, 0,
+                    includeQuote);
+        } catch (final Exception e) {
+            throw new CloudDLPException("Failed to receive valid response from DLP APIs; no response received.", e);
+        }
+    }
+
+    private InspectContentResponse doInpsect(final ContentItem item, final String inspectionTemplate,
+            final List<String> infoTypes, final int maxFindings) {
+        return doInpsect(item, inspectionTemplate, infoTypes, maxFindings, isIncludeQuote());
+    }
+
+    private InspectContentResponse doInpsect(final ContentItem item, final String inspectionTemplate,
+            final List<String> infoTypes, final int maxFindings, final boolean includeQuote) {
+        final InspectConfig inspectionConfig = createInspectConfig(infoTypes, maxFindings, includeQuote);
 
         // Do not specify the type of info to redact using default info types.
         final InspectContentRequest.Builder request = InspectContentRequest.newBuilder()
                 .setParent(LocationName.of(projectProvider.getProjectId(), this.location).toString())
-                .setItem(ContentItem.newBuilder().setByteItem(byteItem).build()).setInspectConfig(inspectionConfig);
+                .setItem(item).setInspectConfig(inspectionConfig);
 
         if (StringUtils.hasText(getInspectionTemplate())) {
             request.setInspectTemplateName(getInspectionTemplate());
@@ -264,7 +845,23 @@ public class CloudDLPTemplate {
         }
 
         // Use the client to send the API request.
-        return dlpClient.inspectContent(request.build());
+        return client().inspectContent(request.build());
+    }
+
+    private InspectConfig createInspectConfig(final List<String> infoTypes, final int maxFindings,
+            final boolean includeQuote) {
+        // The maximum number of findings to report (0 = server maximum)
+        final InspectConfig.FindingLimits limits = InspectConfig.FindingLimits.newBuilder()
+                .setMaxFindingsPerItem(maxFindings).setMaxFindingsPerRequest(maxFindings).build();
+
+        final InspectConfig.Builder inspectionConfig = InspectConfig.newBuilder().setIncludeQuote(includeQuote)
+                .setLimits(limits).setMinLikelihood(getMinLikelihood());
+
+        final List<InfoType> infoTypeList = toInfoTypes(infoTypes);
+        if (!infoTypeList.isEmpty()) {
+            inspectionConfig.addAllInfoTypes(infoTypeList);
+        }
+        return inspectionConfig.build();
     }
 
     public InspectContentResponse inspectContent(final Resource resource, final BytesType bytesType) {
@@ -281,6 +878,10 @@ public class CloudDLPTemplate {
     public InspectContentResponse inspectText(final String text, final BytesType bytesType,
             final String inspectionTemplate, final List<String> infoTypes) {
         Assert.isTrue(util.isTextType(bytesType), "Invalid bytesType not supported text type.");
+        if (this.batchingDispatcher != null && bytesType == BytesType.TEXT_UTF8) {
+            Assert.notNull(text, "text not provided");
+            return this.batchingDispatcher.dispatch(this, text, inspectionTemplate, infoTypes);
+        }
         return inspectContent(text, bytesType, inspectionTemplate, infoTypes);
     }
 
@@ -335,7 +936,7 @@ public class CloudDLPTemplate {
                 .build();
 
         // Use the client to send the API request.
-        final ListInfoTypesResponse response = dlpClient.listInfoTypes(listInfoTypesRequest);
+        final ListInfoTypesResponse response = client().listInfoTypes(listInfoTypesRequest);
         return response.getInfoTypesList();
     }
 
@@ -355,6 +956,28 @@ public class CloudDLPTemplate {
         return this.getSupportedInfoTypes("supported_by=RISK_ANALYSIS", Locale.US);
     }
 
+    /**
+     * Whether the client has been obtained yet.
+     */
+    public boolean isClientInitialized() {
+        return this.dlpClient != null;
+    }
+
+    private DlpServiceClient client() {
+        DlpServiceClient client = this.dlpClient;
+        if (client == null) {
+            synchronized (this) {
+                client = this.dlpClient;
+                if (client == null) {
+                    client = this.dlpClientSupplier.get();
+                    Assert.state(client != null, "DlpServiceClient supplier returned null.");
+                    this.dlpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
     private List<InfoType> toInfoTypes(final List<String> infoTypes) {
         if (Objects.isNull(infoTypes) || infoTypes.isEmpty()) {
             return Collections.emptyList();
@@ -369,6 +992,212 @@ public class CloudDLPTemplate {
         return infoTypeList;
     }
 
+    /**
+     * Iterates over the findings of a text read page by page. A page holds at
+     * most a third of the inline limit in characters so its UTF-8 form always
+     * fits in a request. Each page after the first repeats up to
+     * {@code PAGE_OVERLAP} characters of the previous one, starting at a word
+     * boundary where possible.
+     */
+    private final class PagedFindings implements Iterator<Finding> {
+        private final Reader reader;
+        private final String inspectionTemplate;
+        private final List<String> infoTypes;
+        private final int maxFindings;
+        private final boolean includeQuote;
+        private final char[] buffer;
+        private final int overlap;
+        private int buffered = 0;
+        // Leading buffered characters already inspected as the tail of the previous page.
+        private int carried = 0;
+        private boolean exhausted = false;
+        private boolean truncated = false;
+        private long byteOffset = 0;
+        private long codepointOffset = 0;
+        private Set<String> overlapping = Collections.emptySet();
+        private Iterator<Finding> page = Collections.emptyIterator();
+
+        private PagedFindings(final Reader reader, final String inspectionTemplate, final List<String> infoTypes,
+                final int maxFindings, final boolean includeQuote) {
+            this.reader = reader;
+            this.inspectionTemplate = inspectionTemplate;
+            this.infoTypes = infoTypes;
+            this.maxFindings = maxFindings;
+            this.includeQuote = includeQuote;
+            final long limit = inlineContentLimit == 0 ? DEFAULT_INLINE_CONTENT_LIMIT : inlineContentLimit;
+            this.buffer = new char[(int) Math.max(2, Math.min(Integer.MAX_VALUE, limit / 3))];
+            this.overlap = Math.min(PAGE_OVERLAP, this.buffer.length / 4);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!this.page.hasNext() && hasUninspectedContent()) {
+                this.page = nextPage();
+            }
+            return this.page.hasNext();
+        }
+
+        @Override
+        public Finding next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.page.next();
+        }
+
+        /**
+         * Whether findings or content are left, without inspecting another page.
+         */
+        private boolean hasPending() {
+            return this.page.hasNext() || hasUninspectedContent();
+        }
+
+        /**
+         * Whether any inspected page had its findings truncated.
+         */
+        private boolean isTruncated() {
+            return this.truncated;
+        }
+
+        private boolean hasUninspectedContent() {
+            return !this.exhausted || this.buffered > this.carried;
+        }
+
+        private Iterator<Finding> nextPage() {
+            fill();
+            if (this.buffered <= this.carried) {
+                this.buffered = 0;
+                this.carried = 0;
+                return Collections.emptyIterator();
+            }
+
+            final int end = this.exhausted ? this.buffered : pageEnd();
+            final int next = this.exhausted ? end : overlapStart(end);
+            final String text = new String(this.buffer, 0, end);
+
+            final InspectContentResponse response;
+            try {
+                response = doInpsect(ContentItem.newBuilder()
+                        .setByteItem(util.createByteContent(text, BytesType.TEXT_UTF8)).build(),
+                        this.inspectionTemplate, this.infoTypes, this.maxFindings, this.includeQuote);
+            } catch (final Exception e) {
+                throw new CloudDLPException("Failed to receive valid response from DLP APIs; no response received.",
+                        e);
+            }
+            this.truncated |= response.getResult().getFindingsTruncated();
+
+            // Drop findings already returned for the overlap, and remember those in the next overlap.
+            final long nextCodepoint = this.codepointOffset + text.codePointCount(0, next);
+            final Set<String> tail = new HashSet<>();
+            final List<Finding> findings = new ArrayList<>(response.getResult().getFindingsCount());
+            for (final Finding finding : response.getResult().getFindingsList()) {
+                final Finding shifted = FindingOffsets.shift(finding, this.byteOffset, this.codepointOffset);
+                final String key = key(shifted);
+                if (this.overlapping.contains(key)) {
+                    continue;
+                }
+                if (shifted.getLocation().getCodepointRange().getStart() >= nextCodepoint) {
+                    tail.add(key);
+                }
+                findings.add(shifted);
+            }
+            this.overlapping = tail;
+
+            this.byteOffset += FindingOffsets.utf8Length(text, 0, next);
+            this.codepointOffset = nextCodepoint;
+            System.arraycopy(this.buffer, next, this.buffer, 0, this.buffered - next);
+            this.buffered -= next;
+            this.carried = end - next;
+            return findings.iterator();
+        }
+
+        private void fill() {
+            try {
+                while (!this.exhausted && this.buffered < this.buffer.length) {
+                    final int read = this.reader.read(this.buffer, this.buffered, this.buffer.length - this.buffered);
+                    if (read < 0) {
+                        this.exhausted = true;
+                    } else {
+                        this.buffered += read;
+                    }
+                }
+            } catch (final IOException ex) {
+                throw new CloudDLPException("Failed to read content bytes from provided resource.", ex);
+            }
+        }
+
+        private int pageEnd() {
+            // Prefer cutting after a line break, then after whitespace, in the second half of the page.
+            final int half = this.buffered / 2;
+            int whitespace = -1;
+            for (int i = this.buffered - 1; i >= half; i--) {
+                if (this.buffer[i] == '\n') {
+                    return i + 1;
+                }
+                if (whitespace < 0 && Character.isWhitespace(this.buffer[i])) {
+                    whitespace = i + 1;
+                }
+            }
+            if (whitespace > 0) {
+                return whitespace;
+            }
+            // Never split a surrogate pair.
+            return Character.isHighSurrogate(this.buffer[this.buffered - 1]) ? this.buffered - 1 : this.buffered;
+        }
+
+        /**
+         * Start of the next page: the first word starting in the last
+         * {@code overlap} characters of this one, or the start of that tail,
+         * without leading whitespace.
+         */
+        private int overlapStart(final int end) {
+            if (this.overlap == 0) {
+                return end;
+            }
+            final int from = end - this.overlap;
+            int start = from;
+            for (int i = from; i < end - 1; i++) {
+                if (Character.isWhitespace(this.buffer[i])) {
+                    start = i + 1;
+                    break;
+                }
+            }
+            // Never split a surrogate pair.
+            if (Character.isLowSurrogate(this.buffer[start])) {
+                start++;
+            }
+            while (start < end && Character.isWhitespace(this.buffer[start])) {
+                start++;
+            }
+            return start;
+        }
+
+        private String key(final Finding finding) {
+            final Range range = finding.getLocation().getCodepointRange();
+            return finding.getInfoType().getName() + ':' + range.getStart() + ':' + range.getEnd();
+        }
+
+        private void close() {
+            try {
+                this.reader.close();
+            } catch (final IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Lazily started default executor for job polling.
+     */
+    private static final class JobPollScheduler {
+        private static final ScheduledExecutorService EXECUTOR = Executors
+                .newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "dlp-job-poll");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
     private static final class ByteContentUtil {
         private ByteString readContentBytes(final Resource resource) {
             try {
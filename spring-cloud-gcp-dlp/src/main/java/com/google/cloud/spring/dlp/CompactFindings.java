@@ -0,0 +1,265 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.dlp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.privacy.dlp.v2.Finding;
+import com.google.privacy.dlp.v2.InspectContentResponse;
+import com.google.privacy.dlp.v2.Likelihood;
+import com.google.privacy.dlp.v2.Location;
+
+import org.springframework.util.Assert;
+
+/**
+ * Column oriented, low memory view of inspection findings.
+ * <p>
+ * Offsets are kept in primitive arrays, info types as indexes into a small
+ * table of interned names and likelihoods as single bytes. Quotes are not
+ * retained: {@link #getQuote(int)} slices them from the inspected content on
+ * demand, which also allows inspecting with {@code includeQuote=false}.
+ * <p>
+ * Findings of batch inspections carry the index of the text they were found in,
+ * and their offsets are relative to that text.
+ *
+ * @author Vinesh
+ *
+ * @since 2.0.7
+ */
+public final class CompactFindings {
+    private static final byte UNKNOWN = 0;
+    private static final byte BMP_ONLY = 1;
+    private static final byte SUPPLEMENTARY = 2;
+
+    private final int size;
+    private final int[] items;
+    private final int[] byteStarts;
+    private final int[] byteEnds;
+    private final int[] codepointStarts;
+    private final int[] codepointEnds;
+    private final short[] infoTypeIds;
+    private final byte[] likelihoods;
+    private final String[] infoTypes;
+    private final String[] contents;
+    private final byte[] contentKinds;
+    private final boolean truncated;
+
+    private CompactFindings(final Builder builder, final String[] contents) {
+        this.size = builder.size;
+        this.items = Arrays.copyOf(builder.items, builder.size);
+        this.byteStarts = Arrays.copyOf(builder.byteStarts, builder.size);
+        this.byteEnds = Arrays.copyOf(builder.byteEnds, builder.size);
+        this.codepointStarts = Arrays.copyOf(builder.codepointStarts, builder.size);
+        this.codepointEnds = Arrays.copyOf(builder.codepointEnds, builder.size);
+        this.infoTypeIds = Arrays.copyOf(builder.infoTypeIds, builder.size);
+        this.likelihoods = Arrays.copyOf(builder.likelihoods, builder.size);
+        this.infoTypes = builder.infoTypes.toArray(new String[0]);
+        this.contents = contents;
+        this.contentKinds = new byte[contents.length];
+        this.truncated = builder.truncated;
+    }
+
+    /**
+     * Convert the response of a single content inspection.
+     *
+     * @param response the inspection response
+     * @param content  the inspected text, used to materialize quotes; may be
+     *                 {@code null}
+     * @return the compact findings
+     */
+    public static CompactFindings from(final InspectContentResponse response, final String content) {
+        Assert.notNull(response, "response not provided");
+        return new Builder().add(response, 0, false).build(new String[] { content });
+    }
+
+    /**
+     * Convert the response of a table-packed inspection of several texts, one per
+     * row.
+     *
+     * @param response the inspection response
+     * @param contents the inspected texts in row order
+     * @return the compact findings
+     */
+    public static CompactFindings from(final InspectContentResponse response, final List<String> contents) {
+        Assert.notNull(response, "response not provided");
+        Assert.notNull(contents, "contents not provided");
+        return new Builder().add(response, 0, true).build(contents.toArray(new String[0]));
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isTruncated() {
+        return this.truncated;
+    }
+
+    /**
+     * Index of the inspected text the finding belongs to; always 0 for single
+     * content inspections.
+     */
+    public int getItem(final int index) {
+        return this.items[index];
+    }
+
+    public int getByteStart(final int index) {
+        return this.byteStarts[index];
+    }
+
+    public int getByteEnd(final int index) {
+        return this.byteEnds[index];
+    }
+
+    public int getCodepointStart(final int index) {
+        return this.codepointStarts[index];
+    }
+
+    public int getCodepointEnd(final int index) {
+        return this.codepointEnds[index];
+    }
+
+    public String getInfoType(final int index) {
+        return this.infoTypes[this.infoTypeIds[index]];
+    }
+
+    public Likelihood getLikelihood(final int index) {
+        final Likelihood likelihood = Likelihood.forNumber(this.likelihoods[index]);
+        return likelihood != null ? likelihood : Likelihood.UNRECOGNIZED;
+    }
+
+    /**
+     * Distinct info type names found, in order of first appearance.
+     */
+    public List<String> getInfoTypes() {
+        return Collections.unmodifiableList(Arrays.asList(this.infoTypes));
+    }
+
+    /**
+     * Slice the quote of a finding from the inspected content.
+     *
+     * @param index the finding index
+     * @return the quote, or {@code null} if the content was not retained
+     */
+    public String getQuote(final int index) {
+        final int item = this.items[index];
+        final String content = item < this.contents.length ? this.contents[item] : null;
+        if (content == null) {
+            return null;
+        }
+
+        if (isBmpOnly(item)) {
+            return content.substring(this.codepointStarts[index], this.codepointEnds[index]);
+        }
+        final int start = content.offsetByCodePoints(0, this.codepointStarts[index]);
+        final int end = content.offsetByCodePoints(start, this.codepointEnds[index] - this.codepointStarts[index]);
+        return content.substring(start, end);
+    }
+
+    // Without supplementary characters codepoint offsets are char offsets.
+    private boolean isBmpOnly(final int item) {
+        if (this.contentKinds[item] == UNKNOWN) {
+            final String content = this.contents[item];
+            this.contentKinds[item] = content.codePointCount(0, content.length()) == content.length() ? BMP_ONLY
+                    : SUPPLEMENTARY;
+        }
+        return this.contentKinds[item] == BMP_ONLY;
+    }
+
+    /**
+     * Accumulates findings from one or more responses.
+     */
+    static final class Builder {
+        private int size = 0;
+        private int[] items = new int[0];
+        private int[] byteStarts = new int[0];
+        private int[] byteEnds = new int[0];
+        private int[] codepointStarts = new int[0];
+        private int[] codepointEnds = new int[0];
+        private short[] infoTypeIds = new short[0];
+        private byte[] likelihoods = new byte[0];
+        private final List<String> infoTypes = new ArrayList<>();
+        private final Map<String, Short> infoTypeIndex = new HashMap<>();
+        private boolean truncated = false;
+
+        /**
+         * Append the findings of a response.
+         *
+         * @param response   the inspection response
+         * @param itemOffset added to the item index of every finding
+         * @param table      whether the response is for a table-packed request,
+         *                   whose findings carry their row index
+         * @return this builder
+         */
+        Builder add(final InspectContentResponse response, final int itemOffset, final boolean table) {
+            final List<Finding> findings = response.getResult().getFindingsList();
+            ensureCapacity(this.size + findings.size());
+            for (final Finding finding : findings) {
+                final int row = table ? FindingOffsets.rowIndex(finding) : 0;
+                if (row < 0) {
+                    continue;
+                }
+
+                final Location location = finding.getLocation();
+                this.items[this.size] = itemOffset + row;
+                this.byteStarts[this.size] = Math.toIntExact(location.getByteRange().getStart());
+                this.byteEnds[this.size] = Math.toIntExact(location.getByteRange().getEnd());
+                this.codepointStarts[this.size] = Math.toIntExact(location.getCodepointRange().getStart());
+                this.codepointEnds[this.size] = Math.toIntExact(location.getCodepointRange().getEnd());
+                this.infoTypeIds[this.size] = infoTypeId(finding.getInfoType().getName());
+                this.likelihoods[this.size] = (byte) finding.getLikelihoodValue();
+                this.size++;
+            }
+            this.truncated |= response.getResult().getFindingsTruncated();
+            return this;
+        }
+
+        CompactFindings build(final String[] contents) {
+            return new CompactFindings(this, contents);
+        }
+
+        private short infoTypeId(final String name) {
+            final Short id = this.infoTypeIndex.get(name);
+            if (id != null) {
+                return id;
+            }
+            Assert.state(this.infoTypes.size() < Short.MAX_VALUE, "Too many distinct info types.");
+            final short next = (short) this.infoTypes.size();
+            this.infoTypes.add(name.intern());
+            this.infoTypeIndex.put(name, next);
+            return next;
+        }
+
+        private void ensureCapacity(final int capacity) {
+            if (capacity <= this.items.length) {
+                return;
+            }
+            final int grown = Math.max(capacity, this.items.length + (this.items.length >> 1));
+            this.items = Arrays.copyOf(this.items, grown);
+            this.byteStarts = Arrays.copyOf(this.byteStarts, grown);
+            this.byteEnds = Arrays.copyOf(this.byteEnds, grown);
+            this.codepointStarts = Arrays.copyOf(this.codepointStarts, grown);
+            this.codepointEnds = Arrays.copyOf(this.codepointEnds, grown);
+            this.infoTypeIds = Arrays.copyOf(this.infoTypeIds, grown);
+            this.likelihoods = Arrays.copyOf(this.likelihoods, grown);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.dlp;
+
+import com.google.privacy.dlp.v2.ContentLocation;
+import com.google.privacy.dlp.v2.Finding;
+import com.google.privacy.dlp.v2.Location;
+import com.google.privacy.dlp.v2.Range;
+
+/**
+ * Helpers for re-basing the byte and codepoint ranges of findings obtained by
+ * inspecting a slice of a larger text, and for locating the row of findings
+ * obtained by inspecting a table.
+ *
+ * @author Vinesh
+ *
+ * @since 2.0.7
+ */
+final class FindingOffsets {
+
+    private FindingOffsets() {
+    }
+
+    /**
+     * Move the ranges of a finding by the given offsets.
+     *
+     * @param finding         the finding to move
+     * @param byteOffset      the UTF-8 byte offset to add; may be negative
+     * @param codepointOffset the codepoint offset to add; may be negative
+     * @return the moved finding, or the same instance if both offsets are zero
+     */
+    static Finding shift(final Finding finding, final long byteOffset, final long codepointOffset) {
+        if (byteOffset == 0 && codepointOffset == 0) {
+            return finding;
+        }
+
+        final Location.Builder location = finding.getLocation().toBuilder();
+        if (location.hasByteRange()) {
+            location.setByteRange(shift(location.getByteRange(), byteOffset));
+        }
+        if (location.hasCodepointRange()) {
+            location.setCodepointRange(shift(location.getCodepointRange(), codepointOffset));
+        }
+        return finding.toBuilder().setLocation(location).build();
+    }
+
+    private static Range shift(final Range range, final long offset) {
+        return Range.newBuilder().setStart(range.getStart() + offset).setEnd(range.getEnd() + offset).build();
+    }
+
+    /**
+     * Number of bytes the given characters occupy when encoded as UTF-8, computed
+     * without allocating the encoded form.
+     */
+    static long utf8Length(final CharSequence text) {
+        return utf8Length(text, 0, text.length());
+    }
+
+    /**
+     * Number of bytes the characters between {@code start} inclusive and
+     * {@code end} exclusive occupy when encoded as UTF-8.
+     */
+    static long utf8Length(final CharSequence text, final int start, final int end) {
+        long bytes = 0;
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Row of the table a finding was found in.
+     *
+     * @return the row index, or -1 if the finding has no table location
+     */
+    static int rowIndex(final Finding finding) {
+        for (final ContentLocation location : finding.getLocation().getContentLocationsList()) {
+            if (location.hasRecordLocation() && location.getRecordLocation().hasTableLocation()) {
+                return Math.toIntExact(location.getRecordLocation().getTableLocation().getRowIndex());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Drop the record locations of a finding, i.e. the table field and row it
+     * was found in, so that a finding from a table-packed request has the same
+     * shape as one from inspecting the text on its own.
+     */
+    static Finding withoutRecordLocation(final Finding finding) {
+        if (rowIndex(finding) < 0) {
+            return finding;
+        }
+
+        final Finding.Builder builder = finding.toBuilder();
+        for (final ContentLocation.Builder location : builder.getLocationBuilder().getContentLocationsBuilderList()) {
+            location.clearRecordLocation();
+        }
+        return builder.build();
+    }
+}
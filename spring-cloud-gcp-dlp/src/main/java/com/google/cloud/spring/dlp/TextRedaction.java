@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.dlp;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.google.privacy.dlp.v2.Finding;
+import com.google.privacy.dlp.v2.Range;
+
+import org.springframework.util.Assert;
+
+/**
+ * Applies redaction locally to a text, using the codepoint ranges of findings
+ * returned by an inspection of that same text.
+ * <p>
+ * Overlapping findings are merged into a single redacted span labelled with the
+ * info type of the finding that starts first (the longest one on ties). The text
+ * is then copied in a single pass into a pre-sized buffer, replacing every span.
+ *
+ * @author Vinesh
+ *
+ * @since 2.0.7
+ */
+public final class TextRedaction {
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int HASH_BYTES = 8;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private enum Mode {
+        INFO_TYPE, CHARACTER_MASK, KEYED_HASH
+    }
+
+    private final Mode mode;
+    private final char maskingCharacter;
+    private final byte[] key;
+
+    private TextRedaction(final Mode mode, final char maskingCharacter, final byte[] key) {
+        this.mode = mode;
+        this.maskingCharacter = maskingCharacter;
+        this.key = key;
+    }
+
+    /**
+     * Replace each finding with its info type name in brackets, e.g.
+     * {@code [EMAIL_ADDRESS]}.
+     */
+    public static TextRedaction infoTypeName() {
+        return new TextRedaction(Mode.INFO_TYPE, '\0', null);
+    }
+
+    /**
+     * Replace every character of each finding with the given character.
+     */
+    public static TextRedaction characterMask(final char maskingCharacter) {
+        return new TextRedaction(Mode.CHARACTER_MASK, maskingCharacter, null);
+    }
+
+    /**
+     * Replace each finding with its info type name and a truncated HMAC-SHA256 of
+     * its value, e.g. {@code [EMAIL_ADDRESS:3f9a0c2e71b4d865]}. Equal values give
+     * equal tokens for the same key, so redacted texts can still be joined.
+     *
+     * @param key the HMAC key
+     */
+    public static TextRedaction keyedHash(final byte[] key) {
+        Assert.isTrue(key != null && key.length > 0, "key not provided");
+        return new TextRedaction(Mode.KEYED_HASH, '\0', key.clone());
+    }
+
+    /**
+     * Redact the findings from the text they were found in.
+     *
+     * @param text     the inspected text
+     * @param findings the findings of the inspection, in any order
+     * @return the redacted text
+     */
+    public String apply(final String text, final List<Finding> findings) {
+        Assert.notNull(text, "text not provided");
+        Assert.notNull(findings, "findings not provided");
+        if (findings.isEmpty()) {
+            return text;
+        }
+
+        final Integer[] order = IntStream.range(0, findings.size()).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.<Integer>comparingLong(i -> range(findings.get(i)).getStart())
+                .thenComparing(Comparator.<Integer>comparingLong(i -> range(findings.get(i)).getEnd()).reversed()));
+
+        final Mac mac = this.mode == Mode.KEYED_HASH ? createMac() : null;
+        final StringBuilder redacted = new StringBuilder(text.length() + findings.size() * 16);
+        int index = 0;
+        long codepoint = 0;
+        int next = 0;
+        while (next < order.length) {
+            final Finding finding = findings.get(order[next]);
+            final long start = range(finding).getStart();
+            long end = range(finding).getEnd();
+            // Merge every following finding overlapping this span.
+            while (++next < order.length && range(findings.get(order[next])).getStart() < end) {
+                end = Math.max(end, range(findings.get(order[next])).getEnd());
+            }
+            if (end <= codepoint) {
+                continue;
+            }
+
+            while (codepoint < start && index < text.length()) {
+                final int c = text.codePointAt(index);
+                redacted.appendCodePoint(c);
+                index += Character.charCount(c);
+                codepoint++;
+            }
+            final int spanStart = index;
+            long spanCodepoints = 0;
+            while (codepoint < end && index < text.length()) {
+                index += Character.charCount(text.codePointAt(index));
+                codepoint++;
+                spanCodepoints++;
+            }
+            appendReplacement(redacted, finding.getInfoType().getName(), text, spanStart, index, spanCodepoints, mac);
+        }
+        redacted.append(text, index, text.length());
+        return redacted.toString();
+    }
+
+    private void appendReplacement(final StringBuilder redacted, final String infoType, final String text,
+            final int start, final int end, final long codepoints, final Mac mac) {
+        switch (this.mode) {
+        case CHARACTER_MASK:
+            for (long i = 0; i < codepoints; i++) {
+                redacted.append(this.maskingCharacter);
+            }
+            break;
+        case KEYED_HASH:
+            final byte[] hash = mac.doFinal(text.substring(start, end).getBytes(StandardCharsets.UTF_8));
+            redacted.append('[').append(infoType).append(':');
+            for (int i = 0; i < HASH_BYTES; i++) {
+                redacted.append(HEX[(hash[i] >> 4) & 0xF]).append(HEX[hash[i] & 0xF]);
+            }
+            redacted.append(']');
+            break;
+        default:
+            redacted.append('[').append(infoType).append(']');
+        }
+    }
+
+    private Mac createMac() {
+        try {
+            final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(this.key, HMAC_ALGORITHM));
+            return mac;
+        } catch (final GeneralSecurityException e) {
+            throw new CloudDLPException("Failed to initialize " + HMAC_ALGORITHM + " for keyed hash redaction.", e);
+        }
+    }
+
+    private static Range range(final Finding finding) {
+        return finding.getLocation().getCodepointRange();
+    }
+}
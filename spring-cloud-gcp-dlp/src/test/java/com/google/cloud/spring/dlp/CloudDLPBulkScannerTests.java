@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.dlp;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.google.cloud.dlp.v2.DlpServiceClient;
+import com.google.cloud.spring.core.DefaultGcpProjectIdProvider;
+import com.google.privacy.dlp.v2.ByteContentItem.BytesType;
+import com.google.privacy.dlp.v2.Finding;
+import com.google.privacy.dlp.v2.InspectContentRequest;
+import com.google.privacy.dlp.v2.InspectContentResponse;
+import com.google.privacy.dlp.v2.InspectResult;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+/**
+ * Unit tests for the {@link CloudDLPBulkScanner}.
+ *
+ * @author Vinesh
+ *
+ * @since 2.0.7
+ */
+public class CloudDLPBulkScannerTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DlpServiceClient dlpClient;
+    private CloudDLPBulkScanner scanner;
+
+    @Before
+    public void setupScanner() {
+        this.dlpClient = Mockito.mock(DlpServiceClient.class);
+        when(this.dlpClient.inspectContent(any(InspectContentRequest.class))).thenReturn(InspectContentResponse
+                .newBuilder().setResult(InspectResult.newBuilder().addFindings(Finding.getDefaultInstance())).build());
+
+        this.scanner = new CloudDLPBulkScanner(new CloudDLPTemplate(new DefaultGcpProjectIdProvider(), this.dlpClient));
+        this.scanner.setParallelism(2);
+    }
+
+    @Test
+    public void testScanResumesFromCheckpoint() throws IOException {
+        final Path root = this.folder.newFolder("export").toPath();
+        Files.write(root.resolve("notes.txt"), "contact test@example.com".getBytes(StandardCharsets.UTF_8));
+        Files.write(root.resolve("photo.png"), new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' });
+        Files.write(root.resolve("blob.dat"), new byte[] { 0, 1, 2, 3 });
+        Files.createDirectory(root.resolve("sub"));
+        Files.write(root.resolve("sub/people.csv"), "name,email\na,a@example.com\n".getBytes(StandardCharsets.UTF_8));
+        try (OutputStream out = Files.newOutputStream(root.resolve("archive.zip"));
+                ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("inner/readme.txt"));
+            zip.write("call 555-0100".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        this.scanner.setCheckpoint(this.folder.getRoot().toPath().resolve("scan.checkpoint"));
+
+        final CloudDLPBulkScanner.ScanProgress first = this.scanner.scan(root);
+        Assert.assertEquals(4, first.getFilesScanned());
+        Assert.assertEquals(1, first.getFilesUnsupported());
+        Assert.assertEquals(0, first.getFilesFailed());
+        Assert.assertEquals(4, first.getFindings());
+
+        final CloudDLPBulkScanner.ScanProgress second = this.scanner.scan(root);
+        Assert.assertEquals(0, second.getFilesScanned());
+        Assert.assertEquals(4, second.getFilesSkipped());
+        verify(this.dlpClient, times(4)).inspectContent(any(InspectContentRequest.class));
+    }
+
+    @Test
+    public void testPaxPathIsUsedAndCheckpointInRootIsNotScanned() throws IOException {
+        final String longPath = "deep/" + "n".repeat(150) + ".txt";
+        final Path root = this.folder.newFolder("export").toPath();
+        Files.write(root.resolve("notes.txt"), "contact test@example.com".getBytes(StandardCharsets.UTF_8));
+        final byte[] data = "call 555-0100".getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeTarEntry(tar, "PaxHeaders/entry", 'x', paxRecord("comment", "exported"), paxRecord("path", longPath));
+        writeTarEntry(tar, "deep/truncated.txt", '0', data);
+        tar.write(new byte[1024]);
+        Files.write(root.resolve("export.tar"), tar.toByteArray());
+        final List<String> paths = new CopyOnWriteArrayList<>();
+        this.scanner.setResultListener(result -> paths.add(result.getPath()));
+        this.scanner.setCheckpoint(root.resolve("scan.checkpoint"));
+
+        final CloudDLPBulkScanner.ScanProgress first = this.scanner.scan(root);
+        Assert.assertEquals(2, first.getFilesScanned());
+        Assert.assertTrue(paths.contains("export.tar!/" + longPath));
+
+        final CloudDLPBulkScanner.ScanProgress second = this.scanner.scan(root);
+        Assert.assertEquals(0, second.getFilesScanned());
+        Assert.assertEquals(2, second.getFilesSkipped());
+        verify(this.dlpClient, times(2)).inspectContent(any(InspectContentRequest.class));
+    }
+
+    @Test
+    public void testNonTextEntriesAboveInlineLimitAreUnsupported() throws IOException {
+        final byte[] png = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+        final Path root = this.folder.newFolder("export").toPath();
+        try (OutputStream out = Files.newOutputStream(root.resolve("images.zip"));
+                ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("small.png"));
+            zip.write(png);
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("large.png"));
+            zip.write(png);
+            zip.write(new byte[16]);
+            zip.closeEntry();
+        }
+        final CloudDLPTemplate template = new CloudDLPTemplate(new DefaultGcpProjectIdProvider(), this.dlpClient);
+        template.setInlineContentLimit(16);
+        final CloudDLPBulkScanner scanner = new CloudDLPBulkScanner(template);
+        scanner.setMaxPendingBytes(1);
+
+        final CloudDLPBulkScanner.ScanProgress progress = scanner.scan(root);
+        Assert.assertEquals(1, progress.getFilesScanned());
+        Assert.assertEquals(1, progress.getFilesUnsupported());
+        Assert.assertEquals(0, progress.getFilesFailed());
+        verify(this.dlpClient, times(1)).inspectContent(any(InspectContentRequest.class));
+    }
+
+    @Test
+    public void testDetectType() {
+        final byte[] text = "a,b\n1,2\n".getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(BytesType.CSV, CloudDLPBulkScanner.detectType("data.csv", text));
+        Assert.assertEquals(BytesType.TEXT_UTF8, CloudDLPBulkScanner.detectType("data", text));
+        Assert.assertEquals(BytesType.PDF, CloudDLPBulkScanner.detectType("report.txt", "%PDF-1.7".getBytes()));
+        Assert.assertEquals(BytesType.WORD_DOCUMENT,
+                CloudDLPBulkScanner.detectType("letter.docx", new byte[] { 'P', 'K', 3, 4 }));
+        Assert.assertNull(CloudDLPBulkScanner.detectType("image.bmp.bak", new byte[] { 'B', 'M', 0, 0 }));
+    }
+
+    private static byte[] paxRecord(final String key, final String value) {
+        final String record = " " + key + "=" + value + "\n";
+        int length = record.getBytes(StandardCharsets.UTF_8).length;
+        length += Integer.toString(length + Integer.toString(length).length()).length();
+        return (length + record).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeTarEntry(final ByteArrayOutputStream tar, final String name, final char type,
+            final byte[]... bodies) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (final byte[] part : bodies) {
+            body.write(part);
+        }
+        final byte[] header = new byte[512];
+        put(header, 0, name);
+        put(header, 100, "0000644");
+        put(header, 124, String.format("%011o", body.size()));
+        put(header, 136, String.format("%011o", 0));
+        put(header, 148, "        ");
+        header[156] = (byte) type;
+        put(header, 257, "ustar");
+        put(header, 263, "00");
+        int checksum = 0;
+        for (final byte b : header) {
+            checksum += b & 0xFF;
+        }
+        put(header, 148, String.format("%06o", checksum));
+        header[154] = 0;
+        tar.write(header);
+        tar.write(body.toByteArray());
+        tar.write(new byte[(512 - body.size() % 512) % 512]);
+    }
+
+    private static void put(final byte[] header, final int offset, final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+}
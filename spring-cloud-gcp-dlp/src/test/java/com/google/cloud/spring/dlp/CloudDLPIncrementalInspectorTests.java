@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.dlp;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.google.cloud.dlp.v2.DlpServiceClient;
+import com.google.cloud.spring.core.DefaultGcpProjectIdProvider;
+import com.google.privacy.dlp.v2.Finding;
+import com.google.privacy.dlp.v2.InspectContentRequest;
+import com.google.privacy.dlp.v2.InspectContentResponse;
+import com.google.privacy.dlp.v2.InspectResult;
+import com.google.privacy.dlp.v2.Location;
+import com.google.privacy.dlp.v2.Range;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+/**
+ * Unit tests for the {@link CloudDLPIncrementalInspector}.
+ *
+ * @author Vinesh
+ *
+ * @since 2.0.7
+ */
+public class CloudDLPIncrementalInspectorTests {
+
+    private DlpServiceClient dlpClient;
+    private CloudDLPIncrementalInspector inspector;
+
+    @Before
+    public void setupInspector() {
+        // Every inspected region yields one finding over its first three characters.
+        final Range range = Range.newBuilder().setStart(0).setEnd(3).build();
+        this.dlpClient = Mockito.mock(DlpServiceClient.class);
+        when(this.dlpClient.inspectContent(any(InspectContentRequest.class))).thenReturn(InspectContentResponse
+                .newBuilder().setResult(InspectResult.newBuilder().addFindings(Finding.newBuilder()
+                        .setLocation(Location.newBuilder().setByteRange(range).setCodepointRange(range))))
+                .build());
+
+        this.inspector = new CloudDLPIncrementalInspector(
+                new CloudDLPTemplate(new DefaultGcpProjectIdProvider(), this.dlpClient));
+        this.inspector.setContextLines(0);
+    }
+
+    @Test
+    public void testOnlyChangedLinesAreInspected() {
+        this.inspector.inspect("doc", "aaa\nbbb\nccc\n");
+        final InspectContentResponse response = this.inspector.inspect("doc", "aaa\nXXXX\nccc\n");
+
+        final ArgumentCaptor<InspectContentRequest> requests = ArgumentCaptor.forClass(InspectContentRequest.class);
+        verify(this.dlpClient, times(2)).inspectContent(requests.capture());
+        Assert.assertEquals("XXXX\n", requests.getValue().getItem().getByteItem().getData().toStringUtf8());
+        Assert.assertEquals(List.of(0L, 4L), starts(response));
+    }
+
+    @Test
+    public void testDistantEditsAreInspectedAsSeparateHunks() {
+        this.inspector.setContextLines(1);
+        this.inspector.inspect("doc", "l0\nl1\nl2\nl3\nl4\nl5\nl6\nl7\nl8\nl9\n");
+        final InspectContentResponse response = this.inspector.inspect("doc",
+                "l0\nl1\nnew\nl2\nl3\nl4\nl5\nl6\nl7\nYY8\nl9\n");
+
+        final ArgumentCaptor<InspectContentRequest> requests = ArgumentCaptor.forClass(InspectContentRequest.class);
+        verify(this.dlpClient, times(3)).inspectContent(requests.capture());
+        Assert.assertEquals(List.of("l1\nnew\nl2\n", "l7\nYY8\nl9\n"), requests.getAllValues().subList(1, 3)
+                .stream().map(request -> request.getItem().getByteItem().getData().toStringUtf8())
+                .collect(Collectors.toList()));
+        // The finding of the first line is carried over, the others come from each hunk.
+        Assert.assertEquals(List.of(0L, 3L, 25L), starts(response));
+    }
+
+    @Test
+    public void testUnchangedDocumentIsNotInspectedAgain() {
+        final InspectContentResponse first = this.inspector.inspect("doc", "aaa\nbbb\n");
+        final InspectContentResponse second = this.inspector.inspect("doc", "aaa\nbbb\n");
+
+        verify(this.dlpClient, times(1)).inspectContent(any(InspectContentRequest.class));
+        Assert.assertEquals(first, second);
+    }
+
+    @Test
+    public void testTruncationOfUnchangedLinesIsCarriedOver() {
+        final InspectContentResponse truncated = InspectContentResponse.newBuilder()
+                .setResult(InspectResult.newBuilder().setFindingsTruncated(true)).build();
+        when(this.dlpClient.inspectContent(any(InspectContentRequest.class))).thenReturn(truncated,
+                InspectContentResponse.getDefaultInstance());
+
+        this.inspector.inspect("doc", "aaa\nbbb\nccc\n");
+        final InspectContentResponse response = this.inspector.inspect("doc", "aaa\nXXXX\nccc\n");
+
+        Assert.assertTrue(response.getResult().getFindingsTruncated());
+    }
+
+    @Test
+    public void testLeastRecentlyInspectedDocumentIsEvicted() {
+        this.inspector.setMaxDocuments(1);
+
+        this.inspector.inspect("first", "aaa\n");
+        this.inspector.inspect("second", "bbb\n");
+        this.inspector.inspect("first", "aaa\n");
+
+        verify(this.dlpClient, times(3)).inspectContent(any(InspectContentRequest.class));
+    }
+
+    private static List<Long> starts(final InspectContentResponse response) {
+        return response.getResult().getFindingsList().stream()
+                .map(finding -> finding.getLocation().getCodepointRange().getStart()).collect(Collectors.toList());
+    }
+}
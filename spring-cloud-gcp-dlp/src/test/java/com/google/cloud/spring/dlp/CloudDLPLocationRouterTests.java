@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.dlp;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiExceptionFactory;
+import com.google.privacy.dlp.v2.InspectContentResponse;
+
+import io.grpc.Status;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit tests for the {@link CloudDLPLocationRouter}.
+ *
+ * @author Vinesh
+ *
+ * @since 2.0.7
+ */
+public class CloudDLPLocationRouterTests {
+
+    private CloudDLPTemplate usTemplate;
+    private CloudDLPTemplate euTemplate;
+    private CloudDLPLocationRouter router;
+
+    @Before
+    public void setupRouter() {
+        this.usTemplate = Mockito.mock(CloudDLPTemplate.class);
+        this.euTemplate = Mockito.mock(CloudDLPTemplate.class);
+        when(this.usTemplate.getLocation()).thenReturn("us-central1");
+        when(this.euTemplate.getLocation()).thenReturn("europe-west1");
+
+        this.router = new CloudDLPLocationRouter();
+        this.router.addRoute(this.usTemplate);
+        this.router.addRoute(this.euTemplate);
+        this.router.addResidencyRule("eu", "europe-*");
+    }
+
+    @Test
+    public void testResidencyPinning() {
+        when(this.euTemplate.inspectText(anyString(), isNull(), anyList()))
+                .thenReturn(InspectContentResponse.getDefaultInstance());
+
+        this.router.inspectText("eu", "text");
+
+        Assert.assertEquals(List.of("europe-west1"), this.router.candidates("eu"));
+        verify(this.usTemplate, never()).inspectText(anyString(), isNull(), anyList());
+    }
+
+    @Test
+    public void testFailoverOnUnavailable() {
+        final InspectContentResponse response = InspectContentResponse.getDefaultInstance();
+        final RuntimeException unavailable = new CloudDLPException("unavailable", ApiExceptionFactory
+                .createException(new RuntimeException(), GrpcStatusCode.of(Status.Code.UNAVAILABLE), true));
+        when(this.usTemplate.inspectText(anyString(), isNull(), anyList())).thenThrow(unavailable);
+        when(this.euTemplate.inspectText(anyString(), isNull(), anyList())).thenReturn(response);
+        this.router.setMaxErrorRate(0.1);
+
+        Assert.assertSame(response, this.router.inspectText(null, "text"));
+        Assert.assertEquals(List.of("europe-west1", "us-central1"), this.router.candidates(null));
+    }
+
+    @Test
+    public void testSlowFailuresRankBehindMeasuredRoutes() {
+        final RuntimeException deadline = new CloudDLPException("deadline", ApiExceptionFactory.createException(
+                new RuntimeException(), GrpcStatusCode.of(Status.Code.DEADLINE_EXCEEDED), true));
+        when(this.usTemplate.inspectText(anyString(), isNull(), anyList())).thenAnswer(invocation -> {
+            Thread.sleep(50);
+            throw deadline;
+        });
+        when(this.euTemplate.inspectText(anyString(), isNull(), anyList()))
+                .thenReturn(InspectContentResponse.getDefaultInstance());
+
+        this.router.inspectText(null, "text");
+
+        // The failed route is measured at the time it took to fail, not left at zero.
+        Assert.assertEquals(List.of("europe-west1", "us-central1"), this.router.candidates(null));
+    }
+
+    @Test
+    public void testRemainingQuotaShiftsLoad() {
+        when(this.usTemplate.inspectText(anyString(), isNull(), anyList()))
+                .thenReturn(InspectContentResponse.getDefaultInstance());
+        final CloudDLPLocationRouter quotaRouter = new CloudDLPLocationRouter();
+        quotaRouter.addRoute(this.usTemplate, 2, null);
+        quotaRouter.addRoute(this.euTemplate);
+
+        quotaRouter.inspectText(null, "text");
+
+        // Equal latencies, but half of the quota of us-central1 is used.
+        Assert.assertEquals(List.of("europe-west1", "us-central1"), quotaRouter.candidates(null));
+    }
+
+    @Test
+    public void testRoutesWithoutQuotaLeftAreSkipped() {
+        when(this.usTemplate.inspectText(anyString(), isNull(), anyList()))
+                .thenReturn(InspectContentResponse.getDefaultInstance());
+        when(this.euTemplate.inspectText(anyString(), isNull(), anyList()))
+                .thenReturn(InspectContentResponse.getDefaultInstance());
+        final CloudDLPLocationRouter quotaRouter = new CloudDLPLocationRouter();
+        quotaRouter.addRoute(this.usTemplate, 1, null);
+        quotaRouter.addRoute(this.euTemplate, 1, null);
+
+        quotaRouter.inspectText(null, "first");
+        quotaRouter.inspectText(null, "second");
+
+        Assert.assertEquals(List.of(), quotaRouter.candidates(null));
+        Assert.assertThrows(CloudDLPException.class, () -> quotaRouter.inspectText(null, "third"));
+        verify(this.usTemplate, times(1)).inspectText(anyString(), isNull(), anyList());
+        verify(this.euTemplate, times(1)).inspectText(anyString(), isNull(), anyList());
+    }
+
+    @Test(expected = CloudDLPException.class)
+    public void testUnknownResidency() {
+        this.router.candidates("apac");
+    }
+}
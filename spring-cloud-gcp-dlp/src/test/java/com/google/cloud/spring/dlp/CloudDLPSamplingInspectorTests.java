@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.dlp;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Set;
+
+import com.google.cloud.dlp.v2.DlpServiceClient;
+import com.google.cloud.spring.core.DefaultGcpProjectIdProvider;
+import com.google.privacy.dlp.v2.Finding;
+import com.google.privacy.dlp.v2.InspectContentRequest;
+import com.google.privacy.dlp.v2.InspectContentResponse;
+import com.google.privacy.dlp.v2.InspectResult;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit tests for the {@link CloudDLPSamplingInspector}.
+ *
+ * @author Vinesh
+ *
+ * @since 2.0.7
+ */
+public class CloudDLPSamplingInspectorTests {
+
+    private DlpServiceClient dlpClient;
+    private CloudDLPSamplingInspector inspector;
+
+    @Before
+    public void setupInspector() {
+        this.dlpClient = Mockito.mock(DlpServiceClient.class);
+        this.inspector = new CloudDLPSamplingInspector(
+                new CloudDLPTemplate(new DefaultGcpProjectIdProvider(), this.dlpClient));
+        this.inspector.setTargetInspections(1);
+        this.inspector.setMinRate(0.25);
+        // Only records sampled with certainty are inspected.
+        this.inspector.setRandom(() -> 0.99);
+    }
+
+    @Test
+    public void testRateFallsToLowerBoundWithoutFindings() {
+        when(this.dlpClient.inspectContent(any(InspectContentRequest.class)))
+                .thenReturn(InspectContentResponse.getDefaultInstance());
+
+        for (int i = 0; i < 100; i++) {
+            this.inspector.inspectText("source/field/tenant", "record " + i);
+        }
+
+        verify(this.dlpClient, times(1)).inspectContent(any(InspectContentRequest.class));
+        Assert.assertEquals(0.25, this.inspector.getRate("source/field/tenant"), 0);
+
+        final CloudDLPSamplingInspector.PrevalenceEstimate estimate = this.inspector
+                .getEstimate("source/field/tenant");
+        Assert.assertEquals(100, estimate.getRecords());
+        Assert.assertEquals(1, estimate.getInspected());
+        Assert.assertEquals(0, estimate.getPrevalence(), 0);
+        Assert.assertEquals(0.975, estimate.getUpper(), 1e-9);
+    }
+
+    @Test
+    public void testFindingsTriggerFullInspection() {
+        when(this.dlpClient.inspectContent(any(InspectContentRequest.class))).thenReturn(InspectContentResponse
+                .newBuilder().setResult(InspectResult.newBuilder().addFindings(Finding.getDefaultInstance())).build());
+        this.inspector.setBoostRecords(3);
+
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(this.inspector.inspectText("key", "record " + i).isPresent());
+        }
+        Assert.assertTrue(this.inspector.inspectText("other", "record").isPresent());
+
+        verify(this.dlpClient, times(5)).inspectContent(any(InspectContentRequest.class));
+        final CloudDLPSamplingInspector.PrevalenceEstimate estimate = this.inspector.getEstimate("key");
+        Assert.assertEquals(4, estimate.getPositives());
+        Assert.assertEquals(1, estimate.getPrevalence(), 0);
+        Assert.assertEquals(1, estimate.getLower(), 0);
+        Assert.assertEquals(2, this.inspector.getEstimates().size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAndIdleKeysAreEvicted() throws InterruptedException {
+        when(this.dlpClient.inspectContent(any(InspectContentRequest.class)))
+                .thenReturn(InspectContentResponse.getDefaultInstance());
+        this.inspector.setMaxKeys(2);
+
+        this.inspector.inspectText("first", "record");
+        this.inspector.inspectText("second", "record");
+        this.inspector.inspectText("first", "record");
+        this.inspector.inspectText("third", "record");
+        Assert.assertEquals(Set.of("first", "third"), this.inspector.getEstimates().keySet());
+
+        this.inspector.setMaxIdle(Duration.ofMillis(1));
+        Thread.sleep(10);
+        this.inspector.inspectText("fourth", "record");
+        Assert.assertEquals(Set.of("fourth"), this.inspector.getEstimates().keySet());
+        // An evicted key starts over with full inspection.
+        Assert.assertEquals(1, this.inspector.getRate("first"), 0);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.dlp;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.privacy.dlp.v2.Action;
+import com.google.privacy.dlp.v2.BigQueryTable;
+import com.google.privacy.dlp.v2.ByteContentItem.BytesType;
+import com.google.privacy.dlp.v2.DlpJob;
+import com.google.privacy.dlp.v2.InspectContentRequest;
+import com.google.privacy.dlp.v2.InspectContentResponse;
+import com.google.privacy.dlp.v2.InspectJobConfig;
+import com.google.privacy.dlp.v2.OutputStorageConfig;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * Tests of the {@link CloudDLPTemplate} against an in-memory DLP service.
+ *
+ * @author Vinesh
+ *
+ * @since 2.0.7
+ */
+public class CloudDLPTemplateFakeServiceTests {
+
+    private FakeDlpService service;
+    private CloudDLPTemplate dlpTemplate;
+
+    @Before
+    public void setupTemplate() {
+        this.service = new FakeDlpService();
+        this.dlpTemplate = new CloudDLPTemplate(() -> "test-project", this.service.client());
+        this.dlpTemplate.setJobPollInitialDelay(Duration.ofMillis(1));
+    }
+
+    @Test
+    public void testInspectStorageRunsJobActions() throws Exception {
+        final Action pubSub = Action.newBuilder()
+                .setPubSub(Action.PublishToPubSub.newBuilder().setTopic("projects/test-project/topics/dlp")).build();
+        final Action saveFindings = Action.newBuilder().setSaveFindings(Action.SaveFindings.newBuilder()
+                .setOutputConfig(OutputStorageConfig.newBuilder().setTable(BigQueryTable.newBuilder()
+                        .setProjectId("test-project").setDatasetId("dlp").setTableId("findings"))))
+                .build();
+        this.dlpTemplate.setJobActions(List.of(pubSub));
+
+        final DlpJob job = this.dlpTemplate.inspectStorage("gs://bucket/*", null,
+                List.of(FakeDlpService.EMAIL_ADDRESS), List.of(saveFindings)).get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(DlpJob.JobState.DONE, job.getState());
+        Assert.assertEquals(1, job.getInspectDetails().getResult().getProcessedBytes());
+        Assert.assertEquals(2, this.service.jobPolls.size());
+        final InspectJobConfig config = this.service.jobRequests.get(0).getInspectJob();
+        Assert.assertEquals(List.of(pubSub, saveFindings), config.getActionsList());
+        Assert.assertEquals("gs://bucket/*", config.getStorageConfig().getCloudStorageOptions().getFileSet().getUrl());
+    }
+
+    @Test
+    public void testLargeStorageObjectIsInspectedThroughJob() {
+        this.dlpTemplate.setInlineContentLimit(100);
+
+        final InspectContentResponse response = this.dlpTemplate.inspectContent(storageObject(1000),
+                BytesType.PDF, null, List.of(FakeDlpService.EMAIL_ADDRESS));
+
+        Assert.assertTrue(response.getResult().getFindingsTruncated());
+        Assert.assertEquals(0, response.getResult().getFindingsCount());
+        Assert.assertTrue(this.service.inspectRequests.isEmpty());
+        Assert.assertEquals("gs://bucket/export.pdf", this.service.jobRequests.get(0).getInspectJob()
+                .getStorageConfig().getCloudStorageOptions().getFileSet().getUrl());
+    }
+
+    @Test
+    public void testLargeTextIsInspectedPageByPage() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            builder.append("😀 line ").append(i).append(" reaches user").append(i).append("@example.com")
+                    .append(i % 3 == 0 ? "\n" : " ");
+        }
+        final String text = builder.toString();
+        this.dlpTemplate.setInlineContentLimit(300);
+
+        final InspectContentResponse response = this.dlpTemplate.inspectContent(
+                new ByteArrayResource(text.getBytes(StandardCharsets.UTF_8)), BytesType.TEXT_UTF8, null,
+                List.of(FakeDlpService.EMAIL_ADDRESS));
+
+        Assert.assertTrue(this.service.inspectRequests.size() > 1);
+        Assert.assertFalse(response.getResult().getFindingsTruncated());
+        Assert.assertEquals(FakeDlpService.expectedFindings(text, true), response.getResult().getFindingsList());
+    }
+
+    @Test
+    public void testInspectTextsQuotesSupplementaryCharacters() {
+        this.dlpTemplate.setInlineContentLimit(100);
+        this.dlpTemplate.setMaxfindings(1);
+        final List<String> texts = List.of("😀😀 ann@example.com", "bob@example.com",
+                "🎉 " + "word ".repeat(30) + "carl@example.com 😀 dan@example.com");
+
+        final CompactFindings findings = this.dlpTemplate.inspectTexts(texts);
+
+        Assert.assertEquals(4, findings.size());
+        Assert.assertEquals("ann@example.com", findings.getQuote(0));
+        Assert.assertEquals("bob@example.com", findings.getQuote(1));
+        Assert.assertEquals("carl@example.com", findings.getQuote(2));
+        Assert.assertEquals("dan@example.com", findings.getQuote(3));
+        Assert.assertEquals(2, findings.getItem(3));
+        // The oversize text is paged with the same settings as the table request.
+        Assert.assertTrue(this.service.inspectRequests.size() > 2);
+        for (final InspectContentRequest request : this.service.inspectRequests) {
+            Assert.assertFalse(request.getInspectConfig().getIncludeQuote());
+            Assert.assertEquals(0, request.getInspectConfig().getLimits().getMaxFindingsPerRequest());
+        }
+    }
+
+    private static Resource storageObject(final long size) {
+        return new AbstractResource() {
+            @Override
+            public String getDescription() {
+                return "gs://bucket/export.pdf";
+            }
+
+            @Override
+            public URI getURI() {
+                return URI.create(getDescription());
+            }
+
+            @Override
+            public long contentLength() {
+                return size;
+            }
+
+            @Override
+            public InputStream getInputStream() throws FileNotFoundException {
+                throw new FileNotFoundException(getDescription());
+            }
+        };
+    }
+}
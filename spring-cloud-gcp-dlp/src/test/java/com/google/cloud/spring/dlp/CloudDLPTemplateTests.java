@@ -17,21 +17,46 @@
 package com.google.cloud.spring.dlp;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.google.cloud.dlp.v2.DlpServiceClient;
 import com.google.cloud.spring.core.DefaultGcpProjectIdProvider;
+import com.google.privacy.dlp.v2.ByteContentItem.BytesType;
+import com.google.privacy.dlp.v2.ContentLocation;
+import com.google.privacy.dlp.v2.CreateDlpJobRequest;
+import com.google.privacy.dlp.v2.DlpJob;
+import com.google.privacy.dlp.v2.Finding;
+import com.google.privacy.dlp.v2.InfoType;
 import com.google.privacy.dlp.v2.InspectContentRequest;
 import com.google.privacy.dlp.v2.InspectContentResponse;
+import com.google.privacy.dlp.v2.InspectResult;
+import com.google.privacy.dlp.v2.Likelihood;
 import com.google.privacy.dlp.v2.ListInfoTypesRequest;
 import com.google.privacy.dlp.v2.ListInfoTypesResponse;
+import com.google.privacy.dlp.v2.Location;
+import com.google.privacy.dlp.v2.Range;
+import com.google.privacy.dlp.v2.RecordLocation;
 import com.google.privacy.dlp.v2.RedactImageRequest;
 import com.google.privacy.dlp.v2.RedactImageResponse;
+import com.google.privacy.dlp.v2.Table;
+import com.google.privacy.dlp.v2.TableLocation;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -94,6 +119,263 @@ public class CloudDLPTemplateTests {
         verify(this.dlpClient, times(1)).listInfoTypes(any(ListInfoTypesRequest.class));
     }
 
+    @Test
+    public void testBatchedInspectText() throws Exception {
+        when(this.dlpClient.inspectContent(any(InspectContentRequest.class))).thenAnswer(invocation -> {
+            final Table table = invocation.<InspectContentRequest>getArgument(0).getItem().getTable();
+            final InspectResult.Builder result = InspectResult.newBuilder();
+            for (int row = 0; row < table.getRowsCount(); row++) {
+                final ContentLocation location = ContentLocation.newBuilder()
+                        .setRecordLocation(RecordLocation.newBuilder()
+                                .setTableLocation(TableLocation.newBuilder().setRowIndex(row)))
+                        .build();
+                result.addFindings(Finding.newBuilder().setQuote(table.getRows(row).getValues(0).getStringValue())
+                        .setLocation(Location.newBuilder().addContentLocations(location)));
+            }
+            return InspectContentResponse.newBuilder().setResult(result).build();
+        });
+        this.dlpTemplate.setBatchingDispatcher(new CloudDLPBatchingDispatcher(2, 1024, Duration.ofSeconds(10)));
+
+        final ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            final Future<InspectContentResponse> first = callers.submit(() -> this.dlpTemplate.inspectText("first"));
+            final Future<InspectContentResponse> second = callers
+                    .submit(() -> this.dlpTemplate.inspectText("second"));
+
+            Assert.assertEquals(1, first.get().getResult().getFindingsCount());
+            Assert.assertEquals("first", first.get().getResult().getFindings(0).getQuote());
+            Assert.assertEquals(1, second.get().getResult().getFindingsCount());
+            Assert.assertEquals("second", second.get().getResult().getFindings(0).getQuote());
+            // Batched findings carry no table location, as if the text was inspected on its own.
+            Assert.assertFalse(first.get().getResult().getFindings(0).getLocation().getContentLocations(0)
+                    .hasRecordLocation());
+        } finally {
+            callers.shutdownNow();
+        }
+        verify(this.dlpClient, times(1)).inspectContent(any(InspectContentRequest.class));
+    }
+
+    @Test
+    public void testOverflowedBatchIsSentByItsLeader() throws Exception {
+        final List<Thread> senders = new CopyOnWriteArrayList<>();
+        when(this.dlpClient.inspectContent(any(InspectContentRequest.class))).thenAnswer(invocation -> {
+            senders.add(Thread.currentThread());
+            return InspectContentResponse.getDefaultInstance();
+        });
+        this.dlpTemplate.setBatchingDispatcher(new CloudDLPBatchingDispatcher(10, 10, Duration.ofMillis(500)));
+
+        final ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Thread> first = callers.submit(() -> {
+                this.dlpTemplate.inspectText("aaaaaa");
+                return Thread.currentThread();
+            });
+            Thread.sleep(100);
+            final Future<Thread> second = callers.submit(() -> {
+                this.dlpTemplate.inspectText("bbbbbb");
+                return Thread.currentThread();
+            });
+
+            Assert.assertEquals(List.of(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS)), senders);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBatchedInspectTextReleasesCallersOnError() {
+        when(this.dlpClient.inspectContent(any(InspectContentRequest.class))).thenThrow(new AssertionError("boom"));
+        this.dlpTemplate.setBatchingDispatcher(new CloudDLPBatchingDispatcher(2, 1024, Duration.ofSeconds(10)));
+
+        final ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            final Future<InspectContentResponse> first = callers.submit(() -> this.dlpTemplate.inspectText("first"));
+            final Future<InspectContentResponse> second = callers
+                    .submit(() -> this.dlpTemplate.inspectText("second"));
+
+            // Neither the leader nor the parked caller is left waiting.
+            Assert.assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            Assert.assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStreamFindingsPagesLargeText() {
+        final Range first = Range.newBuilder().setStart(0).setEnd(1).build();
+        when(this.dlpClient.inspectContent(any(InspectContentRequest.class))).thenReturn(InspectContentResponse
+                .newBuilder()
+                .setResult(InspectResult.newBuilder().addFindings(Finding.newBuilder()
+                        .setLocation(Location.newBuilder().setByteRange(first).setCodepointRange(first))))
+                .build());
+        this.dlpTemplate.setInlineContentLimit(18);
+
+        final Resource text = new ByteArrayResource("abcd\nefgh\nijkl\n".getBytes(StandardCharsets.UTF_8));
+        final List<Long> starts;
+        try (Stream<Finding> findings = this.dlpTemplate.streamFindings(text, BytesType.TEXT_UTF8, null, null)) {
+            starts = findings.map(finding -> finding.getLocation().getByteRange().getStart())
+                    .collect(Collectors.toList());
+        }
+
+        Assert.assertEquals(List.of(0L, 5L, 10L), starts);
+        verify(this.dlpClient, times(3)).inspectContent(any(InspectContentRequest.class));
+    }
+
+    @Test
+    public void testStreamFindingsOverlapsPages() {
+        mockTokenFindings();
+        // Pages of 20 characters overlapping by up to 5.
+        this.dlpTemplate.setInlineContentLimit(60);
+
+        final List<Long> starts;
+        try (Stream<Finding> findings = this.dlpTemplate.streamFindings(tokenText(), BytesType.TEXT_UTF8, null,
+                null)) {
+            starts = findings.map(finding -> finding.getLocation().getCodepointRange().getStart())
+                    .collect(Collectors.toList());
+        }
+
+        // "X Y" straddles the first cut and "Q" is reported by both of the first two pages.
+        Assert.assertEquals(List.of(16L, 18L), starts);
+    }
+
+    @Test
+    public void testInspectContentEnforcesMaxFindingsAcrossPages() {
+        mockTokenFindings();
+        this.dlpTemplate.setInlineContentLimit(60);
+        this.dlpTemplate.setMaxfindings(1);
+
+        final InspectContentResponse response = this.dlpTemplate.inspectContent(tokenText(), BytesType.TEXT_UTF8,
+                null, null);
+
+        Assert.assertEquals(1, response.getResult().getFindingsCount());
+        Assert.assertTrue(response.getResult().getFindingsTruncated());
+        verify(this.dlpClient, times(1)).inspectContent(any(InspectContentRequest.class));
+    }
+
+    private static Resource tokenText() {
+        return new ByteArrayResource(("aaaaaaaaaaaaaaa Q X Y" + "b".repeat(49)).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Report a finding for every "Q" and "X Y" of the inspected text.
+     */
+    private void mockTokenFindings() {
+        when(this.dlpClient.inspectContent(any(InspectContentRequest.class))).thenAnswer(invocation -> {
+            final InspectContentRequest request = invocation.getArgument(0);
+            final String text = request.getItem().getByteItem().getData().toStringUtf8();
+            final InspectResult.Builder result = InspectResult.newBuilder();
+            for (final String token : List.of("Q", "X Y")) {
+                for (int i = text.indexOf(token); i >= 0; i = text.indexOf(token, i + 1)) {
+                    final Range range = Range.newBuilder().setStart(i).setEnd(i + token.length()).build();
+                    result.addFindings(Finding.newBuilder().setInfoType(InfoType.newBuilder().setName(token))
+                            .setLocation(Location.newBuilder().setByteRange(range).setCodepointRange(range)));
+                }
+            }
+            return InspectContentResponse.newBuilder().setResult(result).build();
+        });
+    }
+
+    @Test
+    public void testInspectStoragePollsUntilDone() throws Exception {
+        final DlpJob running = DlpJob.newBuilder().setName("job").setState(DlpJob.JobState.RUNNING).build();
+        final DlpJob done = running.toBuilder().setState(DlpJob.JobState.DONE).build();
+        when(this.dlpClient.createDlpJob(any(CreateDlpJobRequest.class))).thenReturn(running);
+        when(this.dlpClient.getDlpJob(anyString())).thenReturn(running, running, done);
+        this.dlpTemplate.setJobPollInitialDelay(Duration.ofMillis(1));
+
+        final DlpJob job = this.dlpTemplate.inspectStorage("gs://bucket/*").get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(DlpJob.JobState.DONE, job.getState());
+        verify(this.dlpClient, times(3)).getDlpJob(anyString());
+    }
+
+    @Test
+    public void testJobPollDelayMustBePositive() {
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> this.dlpTemplate.setJobPollInitialDelay(Duration.ZERO));
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> this.dlpTemplate.setJobPollMaxDelay(Duration.ofSeconds(-1)));
+    }
+
+    @Test
+    public void testInspectTextsCompact() {
+        final Range range = Range.newBuilder().setStart(0).setEnd(3).build();
+        when(this.dlpClient.inspectContent(any(InspectContentRequest.class))).thenAnswer(invocation -> {
+            final InspectContentRequest request = invocation.getArgument(0);
+            Assert.assertFalse(request.getInspectConfig().getIncludeQuote());
+            final InspectResult.Builder result = InspectResult.newBuilder();
+            for (int row = 0; row < request.getItem().getTable().getRowsCount(); row++) {
+                final ContentLocation location = ContentLocation.newBuilder()
+                        .setRecordLocation(RecordLocation.newBuilder()
+                                .setTableLocation(TableLocation.newBuilder().setRowIndex(row)))
+                        .build();
+                result.addFindings(Finding.newBuilder().setInfoType(InfoType.newBuilder().setName("PERSON_NAME"))
+                        .setLikelihood(Likelihood.LIKELY).setLocation(Location.newBuilder().setByteRange(range)
+                                .setCodepointRange(range).addContentLocations(location)));
+            }
+            return InspectContentResponse.newBuilder().setResult(result).build();
+        });
+
+        final CompactFindings findings = this.dlpTemplate.inspectTexts(List.of("abcdef", "xyz"));
+
+        Assert.assertEquals(2, findings.size());
+        Assert.assertEquals(1, findings.getItem(1));
+        Assert.assertEquals("abc", findings.getQuote(0));
+        Assert.assertEquals("xyz", findings.getQuote(1));
+        Assert.assertEquals("PERSON_NAME", findings.getInfoType(1));
+        Assert.assertEquals(Likelihood.LIKELY, findings.getLikelihood(0));
+        verify(this.dlpClient, times(1)).inspectContent(any(InspectContentRequest.class));
+    }
+
+    @Test
+    public void testInspectTextsPagesOversizeText() {
+        final Range range = Range.newBuilder().setStart(0).setEnd(3).build();
+        when(this.dlpClient.inspectContent(any(InspectContentRequest.class))).thenAnswer(invocation -> {
+            final InspectContentRequest request = invocation.getArgument(0);
+            final InspectResult.Builder result = InspectResult.newBuilder();
+            if (request.getItem().hasTable()) {
+                Assert.assertEquals(1, request.getItem().getTable().getRowsCount());
+                result.addFindings(Finding.newBuilder().setLocation(Location.newBuilder().setByteRange(range)
+                        .setCodepointRange(range).addContentLocations(ContentLocation.newBuilder()
+                                .setRecordLocation(RecordLocation.newBuilder()
+                                        .setTableLocation(TableLocation.newBuilder().setRowIndex(0))))));
+            } else {
+                Assert.assertTrue(request.getItem().getByteItem().getData().size() <= 30);
+                Assert.assertFalse(request.getInspectConfig().getIncludeQuote());
+                Assert.assertEquals(0, request.getInspectConfig().getLimits().getMaxFindingsPerRequest());
+            }
+            return InspectContentResponse.newBuilder().setResult(result).build();
+        });
+        this.dlpTemplate.setInlineContentLimit(30);
+
+        final CompactFindings findings = this.dlpTemplate.inspectTexts(List.of("abcdef", "x".repeat(40)));
+
+        Assert.assertEquals(1, findings.size());
+        Assert.assertEquals(0, findings.getItem(0));
+    }
+
+    @Test
+    public void testRedactTextMergesOverlappingFindings() {
+        when(this.dlpClient.inspectContent(any(InspectContentRequest.class))).thenReturn(InspectContentResponse
+                .newBuilder()
+                .setResult(InspectResult.newBuilder().addFindings(finding("PHONE_NUMBER", 19, 27))
+                        .addFindings(finding("FIRST_NAME", 5, 9)).addFindings(finding("PERSON_NAME", 5, 15)))
+                .build());
+
+        Assert.assertEquals("Call [PERSON_NAME] at [PHONE_NUMBER]",
+                this.dlpTemplate.redactText("Call John Smith at 555-1234"));
+        Assert.assertEquals("Call ########## at ########",
+                this.dlpTemplate.maskText("Call John Smith at 555-1234", '#'));
+        verify(this.dlpClient, times(2)).inspectContent(any(InspectContentRequest.class));
+    }
+
+    private static Finding finding(final String infoType, final long start, final long end) {
+        final Range range = Range.newBuilder().setStart(start).setEnd(end).build();
+        return Finding.newBuilder().setInfoType(InfoType.newBuilder().setName(infoType))
+                .setLocation(Location.newBuilder().setCodepointRange(range)).build();
+    }
+
     @Test
     public void testIOError() {
         Assert.assertThrows("Failed to read image bytes from provided resource.", CloudDLPException.class,
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2017-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.spring.dlp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ApiCallContext;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.cloud.dlp.v2.DlpServiceClient;
+import com.google.cloud.dlp.v2.stub.DlpServiceStub;
+import com.google.privacy.dlp.v2.ContentLocation;
+import com.google.privacy.dlp.v2.CreateDlpJobRequest;
+import com.google.privacy.dlp.v2.DlpJob;
+import com.google.privacy.dlp.v2.DlpJobType;
+import com.google.privacy.dlp.v2.Finding;
+import com.google.privacy.dlp.v2.GetDlpJobRequest;
+import com.google.privacy.dlp.v2.InfoType;
+import com.google.privacy.dlp.v2.InspectConfig;
+import com.google.privacy.dlp.v2.InspectContentRequest;
+import com.google.privacy.dlp.v2.InspectContentResponse;
+import com.google.privacy.dlp.v2.InspectDataSourceDetails;
+import com.google.privacy.dlp.v2.InspectResult;
+import com.google.privacy.dlp.v2.Likelihood;
+import com.google.privacy.dlp.v2.Location;
+import com.google.privacy.dlp.v2.Range;
+import com.google.privacy.dlp.v2.RecordLocation;
+import com.google.privacy.dlp.v2.Table;
+import com.google.privacy.dlp.v2.TableLocation;
+import com.google.privacy.dlp.v2.Value;
+
+/**
+ * In-memory stand-in for the Cloud DLP service, used behind a real
+ * {@link DlpServiceClient}. It reports e-mail addresses in text and table
+ * content, honours quote and finding limits, and advances inspection jobs by
+ * one state per status request until they are done.
+ *
+ * @author Vinesh
+ *
+ * @since 2.0.7
+ */
+final class FakeDlpService extends DlpServiceStub {
+    static final String EMAIL_ADDRESS = "EMAIL_ADDRESS";
+
+    private static final Pattern EMAIL = Pattern.compile("[a-z0-9.]+@[a-z0-9]+\\.[a-z]+");
+
+    final List<InspectContentRequest> inspectRequests = new CopyOnWriteArrayList<>();
+    final List<CreateDlpJobRequest> jobRequests = new CopyOnWriteArrayList<>();
+    final List<GetDlpJobRequest> jobPolls = new CopyOnWriteArrayList<>();
+    private final Map<String, DlpJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger jobIds = new AtomicInteger();
+    private volatile boolean shutdown = false;
+
+    DlpServiceClient client() {
+        return DlpServiceClient.create(this);
+    }
+
+    /**
+     * Findings the service reports for a text, relative to its start.
+     */
+    static List<Finding> expectedFindings(final String text, final boolean includeQuote) {
+        final InspectResult.Builder result = InspectResult.newBuilder();
+        inspect(text, -1, InspectConfig.newBuilder().setIncludeQuote(includeQuote).build(), result);
+        return result.getFindingsList();
+    }
+
+    @Override
+    public UnaryCallable<InspectContentRequest, InspectContentResponse> inspectContentCallable() {
+        return unary(this::inspectContent);
+    }
+
+    @Override
+    public UnaryCallable<CreateDlpJobRequest, DlpJob> createDlpJobCallable() {
+        return unary(this::createDlpJob);
+    }
+
+    @Override
+    public UnaryCallable<GetDlpJobRequest, DlpJob> getDlpJobCallable() {
+        return unary(this::getDlpJob);
+    }
+
+    private InspectContentResponse inspectContent(final InspectContentRequest request) {
+        this.inspectRequests.add(request);
+        final InspectResult.Builder result = InspectResult.newBuilder();
+        if (request.getItem().hasTable()) {
+            final List<Table.Row> rows = request.getItem().getTable().getRowsList();
+            for (int row = 0; row < rows.size(); row++) {
+                for (final Value value : rows.get(row).getValuesList()) {
+                    inspect(value.getStringValue(), row, request.getInspectConfig(), result);
+                }
+            }
+        } else {
+            inspect(request.getItem().getByteItem().getData().toStringUtf8(), -1, request.getInspectConfig(),
+                    result);
+        }
+        return InspectContentResponse.newBuilder().setResult(result).build();
+    }
+
+    private static void inspect(final String text, final int row, final InspectConfig config,
+            final InspectResult.Builder result) {
+        final int max = config.getLimits().getMaxFindingsPerRequest();
+        final Matcher matcher = EMAIL.matcher(text);
+        while (matcher.find()) {
+            if (max > 0 && result.getFindingsCount() >= max) {
+                result.setFindingsTruncated(true);
+                return;
+            }
+
+            final Location.Builder location = Location.newBuilder()
+                    .setByteRange(range(utf8Length(text, matcher.start()), utf8Length(text, matcher.end())))
+                    .setCodepointRange(range(text.codePointCount(0, matcher.start()),
+                            text.codePointCount(0, matcher.end())));
+            if (row >= 0) {
+                location.addContentLocations(ContentLocation.newBuilder().setRecordLocation(
+                        RecordLocation.newBuilder().setTableLocation(TableLocation.newBuilder().setRowIndex(row))));
+            }
+            final Finding.Builder finding = Finding.newBuilder()
+                    .setInfoType(InfoType.newBuilder().setName(EMAIL_ADDRESS)).setLikelihood(Likelihood.LIKELY)
+                    .setLocation(location);
+            if (config.getIncludeQuote()) {
+                finding.setQuote(matcher.group());
+            }
+            result.addFindings(finding);
+        }
+    }
+
+    private DlpJob createDlpJob(final CreateDlpJobRequest request) {
+        this.jobRequests.add(request);
+        final DlpJob job = DlpJob.newBuilder()
+                .setName(request.getParent() + "/dlpJobs/i-" + this.jobIds.incrementAndGet())
+                .setType(DlpJobType.INSPECT_JOB).setState(DlpJob.JobState.PENDING)
+                .setInspectDetails(InspectDataSourceDetails.newBuilder().setRequestedOptions(
+                        InspectDataSourceDetails.RequestedOptions.newBuilder().setJobConfig(request.getInspectJob())))
+                .build();
+        this.jobs.put(job.getName(), job);
+        return job;
+    }
+
+    private DlpJob getDlpJob(final GetDlpJobRequest request) {
+        this.jobPolls.add(request);
+        final DlpJob job = this.jobs.computeIfPresent(request.getName(), (name, current) -> {
+            switch (current.getState()) {
+            case PENDING:
+                return current.toBuilder().setState(DlpJob.JobState.RUNNING).build();
+            case RUNNING:
+                final DlpJob.Builder done = current.toBuilder().setState(DlpJob.JobState.DONE);
+                done.getInspectDetailsBuilder().setResult(InspectDataSourceDetails.Result.newBuilder()
+                        .setProcessedBytes(1));
+                return done.build();
+            default:
+                return current;
+            }
+        });
+        if (job == null) {
+            throw new IllegalArgumentException("Unknown DLP job " + request.getName());
+        }
+        return job;
+    }
+
+    private static Range range(final long start, final long end) {
+        return Range.newBuilder().setStart(start).setEnd(end).build();
+    }
+
+    private static long utf8Length(final String text, final int end) {
+        return text.substring(0, end).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static <Q, R> UnaryCallable<Q, R> unary(final Function<Q, R> handler) {
+        return new UnaryCallable<Q, R>() {
+            @Override
+            public ApiFuture<R> futureCall(final Q request, final ApiCallContext context) {
+                try {
+                    return ApiFutures.immediateFuture(handler.apply(request));
+                } catch (final RuntimeException e) {
+                    return ApiFutures.immediateFailedFuture(e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+    }
+
+    @Override
+    public void shutdown() {
+        this.shutdown = true;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return this.shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return this.shutdown;
+    }
+
+    @Override
+    public void shutdownNow() {
+        shutdown();
+    }
+
+    @Override
+    public boolean awaitTermination(final long duration, final TimeUnit unit) {
+        return this.shutdown;
+    }
+}